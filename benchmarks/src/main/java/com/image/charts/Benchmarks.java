@@ -0,0 +1,21 @@
+package com.image.charts;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run every benchmark (or the ones matching the given JMH arguments) with the GC profiler, so that allocation rates
+ * (gc.alloc.rate.norm, in bytes per operation) are reported next to the timings
+ *
+ * {@code java -jar target/benchmarks.jar UrlBenchmark -f 1}
+ */
+public class Benchmarks {
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
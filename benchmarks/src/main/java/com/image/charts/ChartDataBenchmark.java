@@ -0,0 +1,62 @@
+package com.image.charts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * chd encoding of a series in every format, and downsampling of long series
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChartDataBenchmark {
+    @Param({"100", "1000"})
+    public int points;
+
+    @Param({"AWESOME", "TEXT", "SIMPLE", "EXTENDED", "AUTO"})
+    public ChartDataFormat format;
+
+    private double[][] series;
+    private double[] longSeries;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        series = new double[2][points];
+        for (double[] values : series) {
+            for (int i = 0; i < points; i++) values[i] = Math.round(random.nextGaussian() * 10000) / 100.0;
+        }
+        longSeries = new double[100000];
+        for (int i = 0; i < longSeries.length; i++) longSeries[i] = Math.sin(i / 1000.0) + random.nextGaussian() / 10;
+    }
+
+    @Benchmark
+    public String encode() {
+        return ChartDataEncoder.encode(series, format);
+    }
+
+    @Benchmark
+    public double[] lttb() {
+        return Downsampling.lttb().apply(longSeries, 700);
+    }
+
+    @Benchmark
+    public double[] minMax() {
+        return Downsampling.minMax().apply(longSeries, 700);
+    }
+}
@@ -0,0 +1,263 @@
+package com.image.charts;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embeddable stand-in for the Image-Charts API, to load-test the client without calling image-charts.com.
+ *
+ * Answers GET and POST requests on /chart with a canned PNG, or a canned GIF when chan is defined, after a configurable
+ * latency. Requests without chs, and a configurable fraction of random requests, are rejected with the same
+ * x-ic-error-code and x-ic-error-validation headers as the real API.
+ *
+ * The JDK server sends response headers and body in two writes: run it with -Dsun.net.httpserver.nodelay=true (set by
+ * {@link LoadDriver}) so that Nagle's algorithm does not delay the body.
+ *
+ * {@code FakeChartServer server = FakeChartServer.builder().latency(20).jitter(10).errorRate(0.01).build();}
+ * {@code new ImageCharts("http", "127.0.0.1", server.getPort(), "/chart", null, null).cht("p").chs("100x100").toBytes();}
+ */
+public class FakeChartServer implements AutoCloseable {
+    private static final byte[] PNG = image("png");
+    private static final byte[] GIF = image("gif");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latency;
+    private final long jitter;
+    private final double errorRate;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private FakeChartServer(Builder builder) throws IOException {
+        this.latency = builder.latency;
+        this.jitter = builder.jitter;
+        this.errorRate = builder.errorRate;
+        this.executor = Executors.newFixedThreadPool(builder.threads);
+        this.server = HttpServer.create(new InetSocketAddress(builder.host, builder.port), builder.backlog);
+        this.server.setExecutor(executor);
+        this.server.createContext("/chart", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.start();
+    }
+
+    /**
+     * @return {Builder} a new fake server builder initialized with default settings
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return {int} port the server listens to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return {long} number of requests received
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return {long} number of requests answered with an error
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        // the request body is read up front: the JDK server closes the connection after a response without body
+        // whose request was not read to the end, although its headers announced a keep-alive connection
+        String query = exchange.getRequestURI().getRawQuery();
+        String requestBody = new String(readFully(exchange.getRequestBody()), StandardCharsets.UTF_8);
+        if ("POST".equals(exchange.getRequestMethod())) {
+            query = requestBody;
+        }
+
+        long delay = latency + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        if (query == null || !hasParam(query, "chs")) {
+            reject(exchange, 400, "IC_MISSING_CHS", "\\\"chs\\\" is required");
+            return;
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            reject(exchange, 500, "IC_INTERNAL_ERROR", "injected failure");
+            return;
+        }
+
+        boolean gif = hasParam(query, "chan");
+        byte[] image = gif ? GIF : PNG;
+        exchange.getResponseHeaders().add("Content-Type", gif ? "image/gif" : "image/png");
+        exchange.sendResponseHeaders(200, image.length);
+        OutputStream body = exchange.getResponseBody();
+        body.write(image);
+        body.close();
+    }
+
+    private void reject(HttpExchange exchange, int status, String code, String message) throws IOException {
+        errors.incrementAndGet();
+        exchange.getResponseHeaders().add("x-ic-error-code", code);
+        exchange.getResponseHeaders().add("x-ic-error-validation", "[{\"message\":\"" + message + "\"}]");
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static boolean hasParam(String query, String name) {
+        return query.startsWith(name + "=") || query.contains("&" + name + "=");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) out.write(chunk, 0, read);
+        return out.toByteArray();
+    }
+
+    private static byte[] image(String format) {
+        BufferedImage image = new BufferedImage(700, 300, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 700, 300);
+        g.setColor(new Color(0xfd, 0xb4, 0x5c));
+        for (int i = 0; i < 12; i++) {
+            int bar = 40 + (i * 53) % 200;
+            g.fillRect(40 + i * 52, 270 - bar, 30, bar);
+        }
+        g.dispose();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, format, out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static final class Builder {
+        private String host = "127.0.0.1";
+        private int port = 0;
+        private int threads = 200;
+        private int backlog = 1024;
+        private long latency = 0;
+        private long jitter = 0;
+        private double errorRate = 0;
+
+        private Builder() {
+        }
+
+        /**
+         * @param host  address to bind. Default : "127.0.0.1"
+         * @return {Builder}
+         */
+        public Builder host(String host) {
+            this.host = host;
+            return this;
+        }
+
+        /**
+         * @param port  port to listen to, 0 for any free port. Default : 0
+         * @return {Builder}
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param threads  number of threads serving requests, each one sleeps during the simulated latency. Default : 200
+         * @return {Builder}
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param backlog  maximum number of pending connections. Default : 1024
+         * @return {Builder}
+         */
+        public Builder backlog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        /**
+         * @param latency  minimum time (in millisecond) spent rendering each chart. Default : 0
+         * @return {Builder}
+         */
+        public Builder latency(long latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * @param jitter  maximum random time (in millisecond) added to the latency. Default : 0
+         * @return {Builder}
+         */
+        public Builder jitter(long jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * @param errorRate  fraction (0 to 1) of valid requests answered with a 500 error. Default : 0
+         * @return {Builder}
+         */
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * Bind and start the server
+         *
+         * @return {FakeChartServer}
+         * @throws IOException IOException
+         */
+        public FakeChartServer build() throws IOException {
+            return new FakeChartServer(this);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.image.charts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base64 data URI encoding and ImageIO decode/encode of a chart-like image, as PNG and GIF
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImageBenchmark {
+    @Param({"png", "gif"})
+    public String format;
+
+    private BufferedImage image;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        image = chart(700, 300);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        bytes = out.toByteArray();
+    }
+
+    /**
+     * Bars, a line, a title and anti-aliased text: compresses like the images Image-Charts renders
+     */
+    private static BufferedImage chart(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.setColor(new Color(0xfd, 0xb4, 0x5c));
+        for (int i = 0; i < 12; i++) {
+            int bar = 40 + (i * 53) % 200;
+            g.fillRect(40 + i * 52, height - 30 - bar, 30, bar);
+        }
+        g.setColor(new Color(0x27, 0xc9, 0xc2));
+        g.setStroke(new BasicStroke(3));
+        for (int i = 0; i < 11; i++) {
+            g.drawLine(55 + i * 52, height - 80 - (i * 31) % 150, 55 + (i + 1) * 52, height - 80 - ((i + 1) * 31) % 150);
+        }
+        g.setColor(Color.DARK_GRAY);
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 16));
+        g.drawString("Sales per month", width / 2 - 60, 20);
+        g.dispose();
+        return image;
+    }
+
+    @Benchmark
+    public String dataURI() throws IOException {
+        StringBuilder out = new StringBuilder((int) Base64Appender.encodedLength(bytes.length) + 32);
+        out.append("data:image/").append(format).append(";base64,");
+        Base64Appender.encode(new ByteArrayInputStream(bytes), out);
+        return out.toString();
+    }
+
+    @Benchmark
+    public String dataURIWithJdkBase64() {
+        return "data:image/" + format + ";base64," + Base64.getEncoder().encodeToString(bytes);
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,196 @@
+package com.image.charts;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Load-test the client against a {@link FakeChartServer} and print the latency distribution and throughput.
+ *
+ * <ul>
+ * <li>closed-loop: {@code concurrency} threads render charts one after the other with {@link ImageCharts#toBytes()}, the
+ * offered load adapts to the latency.</li>
+ * <li>open-loop: charts are rendered with {@link ImageCharts#toBytesAsync()} at a fixed {@code rate}, whatever the
+ * latency. Latencies are measured from the time each request was scheduled, so that a stalled client is not hidden by
+ * coordinated omission.</li>
+ * </ul>
+ *
+ * {@code java -cp target/benchmarks.jar com.image.charts.LoadDriver --mode=open --rate=2000 --duration=30 --latency=20 --jitter=30}
+ */
+public class LoadDriver {
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<String, String> options;
+    private final Histogram histogram = new ConcurrentHistogram(HIGHEST_LATENCY, 3);
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private LoadDriver(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // read once by the JDK server, before the first one starts: send response bodies without waiting for an ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        Map<String, String> options = new LinkedHashMap<String, String>();
+        options.put("mode", "closed");
+        options.put("concurrency", "32");
+        options.put("rate", "1000");
+        options.put("duration", "30");
+        options.put("warmup", "5");
+        options.put("latency", "20");
+        options.put("jitter", "10");
+        options.put("errorRate", "0");
+        options.put("maxConnections", "200");
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator == -1 || !options.containsKey(arg.substring(2, separator))) {
+                System.err.println("usage: LoadDriver " + usage(options));
+                System.exit(1);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        new LoadDriver(options).run();
+    }
+
+    private static String usage(Map<String, String> defaults) {
+        StringBuilder usage = new StringBuilder();
+        for (Map.Entry<String, String> option : defaults.entrySet()) {
+            usage.append("[--").append(option.getKey()).append('=').append(option.getValue()).append("] ");
+        }
+        return usage.toString();
+    }
+
+    private long number(String option) {
+        return Long.parseLong(options.get(option));
+    }
+
+    private void run() throws Exception {
+        FakeChartServer server = FakeChartServer.builder()
+            .latency(number("latency"))
+            .jitter(number("jitter"))
+            .errorRate(Double.parseDouble(options.get("errorRate")))
+            .threads((int) Math.max(200, number("concurrency")))
+            .build();
+        int maxConnections = (int) number("maxConnections");
+        ImageChartsClient client = ImageChartsClient.builder()
+            .maxConnections(maxConnections)
+            .maxConnectionsPerRoute(maxConnections)
+            .build();
+
+        try {
+            ChartTemplate template = new ImageCharts("http", "127.0.0.1", server.getPort(), "/chart", null, 10000, client)
+                .cht("bvg")
+                .chs("700x300")
+                .chco("fdb45c,27c9c2")
+                .toTemplate();
+
+            long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(number("warmup"));
+            long end = warmupEnd + TimeUnit.SECONDS.toNanos(number("duration"));
+            System.out.println("options " + options);
+
+            if ("open".equals(options.get("mode"))) {
+                runOpenLoop(template, warmupEnd, end);
+            } else {
+                runClosedLoop(template, warmupEnd, end);
+            }
+            report(TimeUnit.NANOSECONDS.toMillis(end - warmupEnd), server);
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    private ImageCharts nextChart(ChartTemplate template) {
+        // distinct data for every chart, like real traffic
+        long n = sequence.incrementAndGet();
+        return template.toChart().chd(new double[]{n % 100, (n / 100) % 100, (n / 10000) % 100}, ChartDataFormat.AWESOME);
+    }
+
+    private void runClosedLoop(final ChartTemplate template, final long warmupEnd, final long end) throws InterruptedException {
+        Thread[] workers = new Thread[(int) number("concurrency")];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long start;
+                    while ((start = System.nanoTime()) < end) {
+                        boolean success;
+                        try {
+                            nextChart(template).toBytes();
+                            success = true;
+                        } catch (Exception e) {
+                            success = false;
+                        }
+                        if (start >= warmupEnd) record(start, success);
+                    }
+                }
+            }, "load-driver-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private void runOpenLoop(ChartTemplate template, final long warmupEnd, long end) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / number("rate");
+        long scheduled = System.nanoTime();
+        final AtomicLong outstanding = new AtomicLong();
+
+        while (scheduled < end) {
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+
+            final long intended = scheduled;
+            outstanding.incrementAndGet();
+            CompletableFuture<byte[]> future = nextChart(template).toBytesAsync();
+            future.whenComplete(new BiConsumer<byte[], Throwable>() {
+                @Override
+                public void accept(byte[] bytes, Throwable error) {
+                    if (intended >= warmupEnd) record(intended, error == null);
+                    outstanding.decrementAndGet();
+                }
+            });
+            scheduled += interval;
+        }
+
+        while (outstanding.get() > 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void record(long start, boolean success) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        histogram.recordValue(Math.min(micros, HIGHEST_LATENCY));
+        if (success) succeeded.incrementAndGet();
+        else failed.incrementAndGet();
+    }
+
+    private void report(long elapsedMillis, FakeChartServer server) {
+        long total = succeeded.get() + failed.get();
+        System.out.printf("requests   %d (%d failed), server saw %d%n", total, failed.get(), server.getRequests());
+        System.out.printf("throughput %.1f req/s%n", total * 1000.0 / elapsedMillis);
+        System.out.printf("latency    p50 %.2f ms  p90 %.2f ms  p99 %.2f ms  p99.9 %.2f ms  max %.2f ms%n",
+            millis(histogram.getValueAtPercentile(50)),
+            millis(histogram.getValueAtPercentile(90)),
+            millis(histogram.getValueAtPercentile(99)),
+            millis(histogram.getValueAtPercentile(99.9)),
+            millis(histogram.getMaxValue()));
+        System.out.println();
+        histogram.outputPercentileDistribution(System.out, 5, 1000.0);
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
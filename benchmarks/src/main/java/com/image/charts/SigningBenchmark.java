@@ -0,0 +1,54 @@
+package com.image.charts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HMAC-SHA256 signature of a query string, and its hex encoding alone
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SigningBenchmark {
+    private static final String QUERY = "cht=bvg&chs=700x300&chd=a%3A-100%2C200.5%2C75.55%2C110&chco=fdb45c%2C27c9c2&icac=ACCOUNT_ID";
+
+    private final StringBuilder buffer = new StringBuilder(256);
+    private final byte[] digest = new byte[32];
+    private final char[] hex = new char[64];
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < digest.length; i++) digest[i] = (byte) (i * 37);
+    }
+
+    @Benchmark
+    public String sign() throws Exception {
+        return UrlSigner.sign("SECRET_KEY", QUERY);
+    }
+
+    @Benchmark
+    public StringBuilder appendSignature() throws Exception {
+        buffer.setLength(0);
+        buffer.append(QUERY);
+        return UrlSigner.appendSignature(buffer, 0, QUERY.length(), "SECRET_KEY");
+    }
+
+    @Benchmark
+    public char[] bytesToHex() {
+        Hex.encode(digest, digest.length, hex);
+        return hex;
+    }
+}
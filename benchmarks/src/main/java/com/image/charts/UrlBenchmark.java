@@ -0,0 +1,59 @@
+package com.image.charts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * toURL() with and without signature, and the compiled template path where only chd varies
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UrlBenchmark {
+    private static final String CHD = "a:-100,200.5,75.55,110,42,17.5,99,12,8,64";
+
+    private ImageCharts plain;
+    private ImageCharts signed;
+    private ChartUrlTemplate compiled;
+    private final StringBuilder buffer = new StringBuilder(512);
+
+    @Setup
+    public void setup() {
+        plain = chart(new ImageCharts());
+        signed = chart(new ImageCharts("SECRET_KEY")).icac("ACCOUNT_ID");
+        compiled = signed.toTemplate().compile("chd");
+    }
+
+    private static ImageCharts chart(ImageCharts chart) {
+        return chart.cht("bvg").chs("700x300").chd(CHD).chco("fdb45c,27c9c2").chtt("Sales per month").chxt("x,y").chl("Jan|Feb|Mar|Apr|May");
+    }
+
+    @Benchmark
+    public String toURL() throws Exception {
+        return plain.toURL();
+    }
+
+    @Benchmark
+    public String toURLSigned() throws Exception {
+        return signed.toURL();
+    }
+
+    @Benchmark
+    public StringBuilder compiledSigned() throws Exception {
+        buffer.setLength(0);
+        return compiled.appendTo(buffer, CHD);
+    }
+}
@@ -0,0 +1,96 @@
+package com.image.charts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Streaming base64 encoder (RFC 4648, no line breaks) writing straight to an {@link Appendable}.
+ *
+ * Bytes are read and encoded chunk by chunk, only one input and one output buffer are ever held in memory.
+ */
+final class Base64Appender {
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int CHUNK = 3 * 2730;
+
+    private Base64Appender() {
+    }
+
+    /**
+     * @param length  number of bytes to encode
+     * @return {long} number of base64 characters produced for this length
+     */
+    static long encodedLength(long length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * Encode every remaining byte of the stream, the stream is not closed
+     *
+     * @param in  bytes to encode
+     * @param out  destination of the base64 characters
+     * @return {long} number of characters appended
+     * @throws IOException IOException
+     */
+    static long encode(InputStream in, Appendable out) throws IOException {
+        byte[] bytes = new byte[CHUNK];
+        char[] chars = new char[CHUNK / 3 * 4];
+        long appended = 0;
+        int pending = 0;
+        int read;
+
+        while ((read = in.read(bytes, pending, bytes.length - pending)) != -1) {
+            int available = pending + read;
+            int whole = available - available % 3;
+            if (whole == 0) {
+                pending = available;
+                continue;
+            }
+
+            int length = encodeBlock(bytes, whole, chars);
+            append(out, chars, length);
+            appended += length;
+
+            pending = available - whole;
+            for (int i = 0; i < pending; i++) {
+                bytes[i] = bytes[whole + i];
+            }
+        }
+
+        if (pending > 0) {
+            int b0 = bytes[0] & 0xff;
+            int b1 = pending > 1 ? bytes[1] & 0xff : 0;
+            chars[0] = ALPHABET[b0 >>> 2];
+            chars[1] = ALPHABET[(b0 << 4 | b1 >>> 4) & 0x3f];
+            chars[2] = pending > 1 ? ALPHABET[(b1 << 2) & 0x3f] : '=';
+            chars[3] = '=';
+            append(out, chars, 4);
+            appended += 4;
+        }
+
+        return appended;
+    }
+
+    private static int encodeBlock(byte[] bytes, int length, char[] chars) {
+        int c = 0;
+        for (int i = 0; i < length; i += 3) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+            chars[c++] = ALPHABET[bits >>> 18];
+            chars[c++] = ALPHABET[(bits >>> 12) & 0x3f];
+            chars[c++] = ALPHABET[(bits >>> 6) & 0x3f];
+            chars[c++] = ALPHABET[bits & 0x3f];
+        }
+        return c;
+    }
+
+    private static void append(Appendable out, char[] chars, int length) throws IOException {
+        if (out instanceof Writer) {
+            ((Writer) out).write(chars, 0, length);
+        } else if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(chars, 0, length);
+        } else {
+            out.append(CharBuffer.wrap(chars, 0, length));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.image.charts;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Render many {@link ImageCharts} concurrently with a bounded number of in-flight requests.
+ *
+ * Charts are pulled lazily from the input so huge batches are never materialized in memory. Each chart is rendered on its
+ * own worker (a virtual thread when the JDK supports it, a fixed platform thread pool otherwise) and its outcome is
+ * reported to the {@link ChartSink} as soon as it completes: a slow or failing chart only holds one of the
+ * {@link Builder#parallelism(int)} slots, bounded by the timeout of its own {@link ImageCharts} instance.
+ *
+ * {@code BatchResult result = BatchRenderer.builder().parallelism(64).build().render(charts, sink);}
+ */
+public class BatchRenderer {
+    private static final Method VIRTUAL_THREAD_EXECUTOR = virtualThreadExecutorFactory();
+
+    private final int parallelism;
+    private final boolean virtualThreads;
+    private final ExecutorService executor;
+
+    private BatchRenderer(Builder builder) {
+        this.parallelism = builder.parallelism;
+        this.virtualThreads = builder.virtualThreads;
+        this.executor = builder.executor;
+    }
+
+    /**
+     * @return {Builder} a new batch renderer builder initialized with default settings
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return {boolean} true if the running JDK provides virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Render every chart and block until all of them were reported to the sink
+     *
+     * @param charts  configured charts, rendered with their own client, secret and timeout
+     * @param sink  receives each rendered image or error
+     * @return {BatchResult} success and failure counts
+     * @throws InterruptedException if the calling thread is interrupted while waiting for a free slot
+     */
+    public BatchResult render(Iterable<ImageCharts> charts, ChartSink sink) throws InterruptedException {
+        return render(charts.iterator(), sink);
+    }
+
+    /**
+     * Render every chart and block until all of them were reported to the sink
+     *
+     * @param charts  configured charts, consumed lazily as slots become available
+     * @param sink  receives each rendered image or error
+     * @return {BatchResult} success and failure counts
+     * @throws InterruptedException if the calling thread is interrupted while waiting for a free slot
+     */
+    public BatchResult render(Iterator<ImageCharts> charts, final ChartSink sink) throws InterruptedException {
+        final long start = System.nanoTime();
+        final Semaphore slots = new Semaphore(parallelism);
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final ExecutorService workers = this.executor != null ? this.executor : newExecutor();
+        boolean completed = false;
+
+        try {
+            int index = 0;
+            while (charts.hasNext()) {
+                final ImageCharts chart = charts.next();
+                final int position = index++;
+
+                slots.acquire();
+                try {
+                    workers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                renderOne(position, chart, sink, succeeded, failed);
+                            } finally {
+                                slots.release();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    slots.release();
+                    throw e;
+                }
+            }
+
+            // every slot is free again once the last in-flight chart has been reported
+            slots.acquire(parallelism);
+            slots.release(parallelism);
+            completed = true;
+        } finally {
+            if (workers != this.executor) {
+                if (completed) workers.shutdown();
+                else workers.shutdownNow();
+            }
+        }
+
+        return new BatchResult(succeeded.get(), failed.get(), (System.nanoTime() - start) / 1000000);
+    }
+
+    private static void renderOne(int index, ImageCharts chart, ChartSink sink, AtomicInteger succeeded, AtomicInteger failed) {
+        try {
+            sink.onSuccess(index, chart, chart.toBytes());
+            succeeded.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            try {
+                sink.onFailure(index, chart, e);
+            } catch (RuntimeException sinkError) {
+                // left to the worker thread, along with the failure the sink was given
+                sinkError.addSuppressed(e);
+                throw sinkError;
+            }
+        }
+    }
+
+    private ExecutorService newExecutor() {
+        if (virtualThreads && VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (Exception e) {
+                // fall back to platform threads
+            }
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "image-charts-batch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static Method virtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static final class Builder {
+        private int parallelism = 16;
+        private boolean virtualThreads = true;
+        private ExecutorService executor;
+
+        private Builder() {
+        }
+
+        /**
+         * @param parallelism  maximum number of charts rendered at the same time. Default : 16
+         * @return {Builder}
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * @param virtualThreads  render each chart on a virtual thread when the JDK supports it. Default : true
+         * @return {Builder}
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * @param executor  caller-managed executor running the renders instead of one created per batch. Default : null
+         * @return {Builder}
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public BatchRenderer build() {
+            return new BatchRenderer(this);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.image.charts;
+
+/**
+ * Summary of a {@link BatchRenderer#render(Iterable, ChartSink)} run, per-item outcomes are reported to the {@link ChartSink}
+ */
+public final class BatchResult {
+    private final int succeeded;
+    private final int failed;
+    private final long elapsed;
+
+    BatchResult(int succeeded, int failed, long elapsed) {
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return {int} number of charts rendered and accepted by the sink
+     */
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * @return {int} number of charts reported to {@link ChartSink#onFailure(int, ImageCharts, Throwable)}
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return {int} total number of charts processed
+     */
+    public int getTotal() {
+        return succeeded + failed;
+    }
+
+    /**
+     * @return {long} wall-clock duration of the batch in milliseconds
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{succeeded=" + succeeded + ", failed=" + failed + ", elapsed=" + elapsed + "ms}";
+    }
+}
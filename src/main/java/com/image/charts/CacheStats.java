@@ -0,0 +1,63 @@
+package com.image.charts;
+
+/**
+ * Immutable snapshot of a {@link ChartCache} counters
+ */
+public final class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long entries;
+    private final long bytes;
+
+    public CacheStats(long hits, long misses, long evictions, long entries, long bytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.entries = entries;
+        this.bytes = bytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return {double} hits / (hits + misses), 1.0 when the cache was never queried
+     */
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    /**
+     * @return {long} number of entries removed to honor the size or age limits
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return {long} number of entries currently stored
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return {long} total size of the stored images in bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hits + ", misses=" + misses + ", hitRatio=" + getHitRatio() + ", evictions=" + evictions
+            + ", entries=" + entries + ", bytes=" + bytes + "}";
+    }
+}
@@ -0,0 +1,66 @@
+package com.image.charts;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rendered chart image stored by a {@link ChartCache}, along with the response headers worth keeping (Content-Type...)
+ */
+public final class CachedChart {
+    private final ByteBuffer content;
+    private final Map<String, String> headers;
+    private final long storedAt;
+
+    /**
+     * @param content  image bytes, the buffer is not copied and must not be modified afterwards
+     * @param headers  response headers, looked up case-insensitively, may be null
+     * @param storedAt  time (in millisecond since epoch) at which the chart was rendered
+     */
+    public CachedChart(ByteBuffer content, Map<String, String> headers, long storedAt) {
+        this.content = content.asReadOnlyBuffer();
+        TreeMap<String, String> sorted = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) sorted.putAll(headers);
+        this.headers = Collections.unmodifiableMap(sorted);
+        this.storedAt = storedAt;
+    }
+
+    /**
+     * @param content  image bytes, the array is not copied and must not be modified afterwards
+     * @param headers  response headers, looked up case-insensitively, may be null
+     * @param storedAt  time (in millisecond since epoch) at which the chart was rendered
+     */
+    public CachedChart(byte[] content, Map<String, String> headers, long storedAt) {
+        this(ByteBuffer.wrap(content), headers, storedAt);
+    }
+
+    /**
+     * @return {ByteBuffer} read-only view of the image bytes, positioned at 0
+     */
+    public ByteBuffer getContent() {
+        return content.duplicate();
+    }
+
+    /**
+     * @return {int} image size in bytes
+     */
+    public int getSize() {
+        return content.remaining();
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * @return {long} time (in millisecond since epoch) at which the chart was rendered
+     */
+    public long getStoredAt() {
+        return storedAt;
+    }
+}
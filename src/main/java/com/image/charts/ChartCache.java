@@ -0,0 +1,34 @@
+package com.image.charts;
+
+import java.io.IOException;
+
+/**
+ * Store of rendered charts consulted by {@link ImageChartsClient} before calling Image-Charts API.
+ *
+ * Keys are full chart URLs as built by {@link ImageCharts#toURL()}, so two charts with the same parameters (and signature)
+ * share an entry. Implementations must be thread-safe. Cache failures never fail a render: errors thrown by
+ * {@link #put(String, CachedChart)} are ignored and errors thrown by {@link #get(String)} are treated as misses.
+ *
+ * {@code ImageChartsClient.builder().cache(DiskChartCache.builder(Paths.get("/var/cache/charts")).build()).build();}
+ */
+public interface ChartCache {
+
+    /**
+     * @param key  chart URL
+     * @return {CachedChart} the cached chart or null when absent or expired
+     * @throws IOException IOException
+     */
+    CachedChart get(String key) throws IOException;
+
+    /**
+     * @param key  chart URL
+     * @param chart  rendered chart
+     * @throws IOException IOException
+     */
+    void put(String key, CachedChart chart) throws IOException;
+
+    /**
+     * @return {CacheStats} snapshot of the cache counters
+     */
+    CacheStats stats();
+}
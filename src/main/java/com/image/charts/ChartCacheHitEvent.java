@@ -0,0 +1,32 @@
+package com.image.charts;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event written when a chart is served from a {@link ChartCache}
+ *
+ * Only referenced through {@link ChartEvents}.
+ */
+@Name("com.image.charts.ChartCacheHit")
+@Label("Chart Cache Hit")
+@Category("Image-Charts")
+@Description("Chart served from the client cache")
+@StackTrace(false)
+final class ChartCacheHitEvent extends Event {
+    @Label("URL Hash")
+    int urlHash;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Revalidated")
+    @Description("Image-Charts API confirmed the cached image with a 304 Not Modified")
+    boolean revalidated;
+}
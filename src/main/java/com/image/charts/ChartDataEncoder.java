@@ -0,0 +1,234 @@
+package com.image.charts;
+
+import java.math.BigDecimal;
+
+/**
+ * Encode numeric series into a chd value, appending digits and codes straight into a single buffer.
+ *
+ * NaN and infinite values are missing values. With the simple and extended encodings, series are scaled against the
+ * maximum of all series and negative values are missing values too.
+ */
+final class ChartDataEncoder {
+    private static final char[] SIMPLE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    private static final char[] EXTENDED = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-.".toCharArray();
+    private static final int SIMPLE_MAX = SIMPLE.length - 1;
+    private static final int EXTENDED_MAX = EXTENDED.length * EXTENDED.length - 1;
+    // ':' and the ',' or '|' separators are percent-encoded in the URL
+    private static final int ENCODED_SEPARATOR = 3;
+
+    private ChartDataEncoder() {
+    }
+
+    static String encode(double[][] series, ChartDataFormat format) {
+        if (series.length == 0) throw new IllegalArgumentException("at least one series is required");
+
+        switch (format) {
+            case AWESOME:
+                return appendDecimal(new StringBuilder(), 'a', series).toString();
+            case TEXT:
+                return appendDecimal(new StringBuilder(), 't', series).toString();
+            case SIMPLE:
+                return appendScaled(new StringBuilder(), series, max(series), false).toString();
+            case EXTENDED:
+                return appendScaled(new StringBuilder(), series, max(series), true).toString();
+            default:
+                return encodeShortest(series);
+        }
+    }
+
+    /**
+     * Same encodings as {@link #encode(double[][], ChartDataFormat)} for a single integer series, without widening it to doubles
+     */
+    static String encode(int[] values, ChartDataFormat format) {
+        switch (format) {
+            case AWESOME:
+                return appendDecimal(new StringBuilder(), 'a', values).toString();
+            case TEXT:
+                return appendDecimal(new StringBuilder(), 't', values).toString();
+            case SIMPLE:
+                return appendScaled(new StringBuilder(), values, max(values), false).toString();
+            case EXTENDED:
+                return appendScaled(new StringBuilder(), values, max(values), true).toString();
+            default:
+                return encodeShortest(values);
+        }
+    }
+
+    private static String encodeShortest(double[][] series) {
+        StringBuilder awesome = appendDecimal(new StringBuilder(), 'a', series);
+        int awesomeLength = encodedLength(awesome);
+
+        if (!isNonNegative(series)) return awesome.toString();
+
+        double max = max(series);
+        int values = 0;
+        for (double[] serie : series) {
+            values += serie.length;
+        }
+        // "s:" or "e:" then one separator between each series
+        int separators = ENCODED_SEPARATOR * series.length + 1;
+
+        if (values + separators < awesomeLength && isLossless(series, max, SIMPLE_MAX)) {
+            return appendScaled(new StringBuilder(), series, max, false).toString();
+        }
+        if (2 * values + separators < awesomeLength && isLossless(series, max, EXTENDED_MAX)) {
+            return appendScaled(new StringBuilder(), series, max, true).toString();
+        }
+        return awesome.toString();
+    }
+
+    private static String encodeShortest(int[] values) {
+        StringBuilder awesome = appendDecimal(new StringBuilder(), 'a', values);
+        int awesomeLength = encodedLength(awesome);
+
+        int max = 0;
+        for (int value : values) {
+            if (value < 0) return awesome.toString();
+            if (value > max) max = value;
+        }
+        int separators = ENCODED_SEPARATOR + 1;
+
+        if (values.length + separators < awesomeLength && isLossless(values, max, SIMPLE_MAX)) {
+            return appendScaled(new StringBuilder(), values, max, false).toString();
+        }
+        if (2 * values.length + separators < awesomeLength && isLossless(values, max, EXTENDED_MAX)) {
+            return appendScaled(new StringBuilder(), values, max, true).toString();
+        }
+        return awesome.toString();
+    }
+
+    private static StringBuilder appendDecimal(StringBuilder out, char format, int[] values) {
+        out.append(format).append(':');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) out.append(',');
+            out.append(values[i]);
+        }
+        return out;
+    }
+
+    private static StringBuilder appendScaled(StringBuilder out, int[] values, int max, boolean extended) {
+        int levels = extended ? EXTENDED_MAX : SIMPLE_MAX;
+        out.append(extended ? 'e' : 's').append(':');
+        for (int value : values) {
+            if (value < 0) {
+                out.append(extended ? "__" : "_");
+                continue;
+            }
+            appendCode(out, max > 0 ? (int) Math.round((double) value / max * levels) : 0, extended);
+        }
+        return out;
+    }
+
+    private static StringBuilder appendDecimal(StringBuilder out, char format, double[][] series) {
+        out.append(format).append(':');
+        for (int s = 0; s < series.length; s++) {
+            if (s > 0) out.append('|');
+            double[] values = series[s];
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) out.append(',');
+                appendNumber(out, values[i]);
+            }
+        }
+        return out;
+    }
+
+    private static StringBuilder appendScaled(StringBuilder out, double[][] series, double max, boolean extended) {
+        int levels = extended ? EXTENDED_MAX : SIMPLE_MAX;
+        out.append(extended ? 'e' : 's').append(':');
+        for (int s = 0; s < series.length; s++) {
+            if (s > 0) out.append(',');
+            for (double value : series[s]) {
+                if (isMissing(value) || value < 0) {
+                    out.append(extended ? "__" : "_");
+                    continue;
+                }
+                appendCode(out, max > 0 ? (int) Math.round(value / max * levels) : 0, extended);
+            }
+        }
+        return out;
+    }
+
+    private static void appendCode(StringBuilder out, int code, boolean extended) {
+        if (extended) {
+            out.append(EXTENDED[code / EXTENDED.length]).append(EXTENDED[code % EXTENDED.length]);
+        } else {
+            out.append(SIMPLE[code]);
+        }
+    }
+
+    /**
+     * Shortest plain decimal form: no exponent, no trailing ".0"
+     */
+    static StringBuilder appendNumber(StringBuilder out, double value) {
+        if (isMissing(value)) return out.append('_');
+
+        double abs = Math.abs(value);
+        if (value == Math.rint(value) && abs < 1e15) {
+            return out.append((long) value);
+        }
+        if (abs >= 1e-3 && abs < 1e7) {
+            return out.append(value);
+        }
+        return out.append(BigDecimal.valueOf(value).stripTrailingZeros().toPlainString());
+    }
+
+    private static boolean isMissing(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value);
+    }
+
+    private static double max(double[][] series) {
+        double max = 0;
+        for (double[] values : series) {
+            for (double value : values) {
+                if (!isMissing(value) && value > max) max = value;
+            }
+        }
+        return max;
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+        for (int value : values) {
+            if (value > max) max = value;
+        }
+        return max;
+    }
+
+    private static boolean isNonNegative(double[][] series) {
+        for (double[] values : series) {
+            for (double value : values) {
+                if (value < 0) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLossless(double[][] series, double max, int levels) {
+        if (max <= 0) return true;
+        for (double[] values : series) {
+            for (double value : values) {
+                if (isMissing(value)) continue;
+                double code = value / max * levels;
+                if (Math.abs(code - Math.rint(code)) > 1e-9) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLossless(int[] values, int max, int levels) {
+        if (max <= 0) return true;
+        for (int value : values) {
+            if ((long) value * levels % max != 0) return false;
+        }
+        return true;
+    }
+
+    private static int encodedLength(CharSequence chd) {
+        int length = 0;
+        for (int i = 0; i < chd.length(); i++) {
+            char c = chd.charAt(i);
+            length += c == ':' || c == ',' || c == '|' ? ENCODED_SEPARATOR : 1;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,29 @@
+package com.image.charts;
+
+/**
+ * Encodings of the chd parameter
+ *
+ * @see <a href="https://documentation.image-charts.com/reference/data-format/">Reference documentation</a>
+ */
+public enum ChartDataFormat {
+    /**
+     * a: exact values, automatically scaled by Image-Charts
+     */
+    AWESOME,
+    /**
+     * t: exact values, in the 0-100 range unless chds is defined
+     */
+    TEXT,
+    /**
+     * s: one character per value, values are scaled to 62 levels between 0 and the maximum of the data
+     */
+    SIMPLE,
+    /**
+     * e: two characters per value, values are scaled to 4096 levels between 0 and the maximum of the data
+     */
+    EXTENDED,
+    /**
+     * the shortest of a:, s: and e: that represents the data without loss
+     */
+    AUTO
+}
@@ -0,0 +1,92 @@
+package com.image.charts;
+
+import jdk.jfr.EventType;
+
+/**
+ * Entry point to the Java Flight Recorder events of the client
+ *
+ * The jdk.jfr classes are only touched when the running JVM provides them, so that the client keeps working on custom
+ * runtime images without the jdk.jfr module. When no recording enables the events, {@link #begin()} returns null and renders
+ * are not traced at all.
+ */
+final class ChartEvents {
+    private static final boolean AVAILABLE = isAvailable();
+
+    private ChartEvents() {
+    }
+
+    /**
+     * Begin the {@link ChartRequestEvent} of a render
+     *
+     * @return {ChartTrace} trace to fill and commit, or null when no recording enables the event
+     */
+    static ChartTrace begin() {
+        return AVAILABLE ? Recorder.begin() : null;
+    }
+
+    static void commit(ChartTrace trace) {
+        Recorder.commit(trace);
+    }
+
+    /**
+     * Write a {@link ChartCacheHitEvent}
+     *
+     * @param url  chart URL served from the cache
+     * @param bytes  size of the cached image
+     * @param revalidated  true when Image-Charts API confirmed the cached image with a 304
+     */
+    static void cacheHit(String url, long bytes, boolean revalidated) {
+        if (AVAILABLE) Recorder.cacheHit(url, bytes, revalidated);
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Holder of the jdk.jfr references, only loaded when flight recorder is available
+     */
+    private static final class Recorder {
+        private static final EventType REQUEST = EventType.getEventType(ChartRequestEvent.class);
+
+        static ChartTrace begin() {
+            if (!REQUEST.isEnabled()) return null;
+            ChartRequestEvent event = new ChartRequestEvent();
+            event.begin();
+            return new ChartTrace(event);
+        }
+
+        static void commit(ChartTrace trace) {
+            ChartRequestEvent event = (ChartRequestEvent) trace.getEvent();
+            event.end();
+            if (!event.shouldCommit()) return;
+            event.urlHash = trace.url != null ? trace.url.hashCode() : 0;
+            event.chartType = trace.chartType;
+            event.status = trace.status;
+            event.bytes = trace.bytes;
+            event.cacheHit = trace.cacheHit;
+            event.errorCode = trace.errorCode;
+            event.connect = trace.connectNanos;
+            event.wait = trace.waitNanos;
+            event.download = trace.downloadNanos;
+            event.decode = trace.decodeNanos;
+            event.commit();
+        }
+
+        static void cacheHit(String url, long bytes, boolean revalidated) {
+            ChartCacheHitEvent event = new ChartCacheHitEvent();
+            if (!event.shouldCommit()) return;
+            event.urlHash = url.hashCode();
+            event.bytes = bytes;
+            event.revalidated = revalidated;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.image.charts;
+
+/**
+ * Listener of the client activity, to export render timings and outcomes to a monitoring system.
+ *
+ * Every method does nothing by default, implementations override the events they need. Methods are called on the
+ * rendering threads (including the I/O threads of the non-blocking engine) and must return quickly without throwing.
+ * When no listener is configured, {@link #NOOP} is used and the client does not even read the clock.
+ *
+ * {@code ImageChartsClient.builder().metrics(new MicrometerChartMetrics(registry)).build();}
+ */
+public interface ChartMetrics {
+    /**
+     * Listener ignoring every event
+     */
+    ChartMetrics NOOP = new ChartMetrics() {
+    };
+
+    /**
+     * @param phase  timed step
+     * @param nanos  duration in nanoseconds
+     */
+    default void onTiming(ChartPhase phase, long nanos) {
+    }
+
+    /**
+     * Called once per HTTP response received from Image-Charts API, after its body was transferred
+     *
+     * @param status  HTTP status code
+     * @param bytes  number of body bytes transferred
+     */
+    default void onResponse(int status, long bytes) {
+    }
+
+    /**
+     * Called before a failed attempt is sent again, as allowed by the client {@link RetryPolicy}
+     *
+     * @param status  HTTP status code of the failed attempt, 0 if no response was received
+     * @param errorCode  x-ic-error-code of API errors, or the exception class name of I/O failures
+     */
+    default void onRetry(int status, String errorCode) {
+    }
+
+    /**
+     * Called when a duplicate request is sent because the first one is slow, as allowed by the client {@link HedgingPolicy}
+     */
+    default void onHedge() {
+    }
+
+    /**
+     * Called once per failed render
+     *
+     * @param status  HTTP status code, 0 if no response was received
+     * @param errorCode  x-ic-error-code of API errors (IC_MISSING_CHS...), or the exception class name of I/O failures
+     */
+    default void onError(int status, String errorCode) {
+    }
+}
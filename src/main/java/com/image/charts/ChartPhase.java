@@ -0,0 +1,28 @@
+package com.image.charts;
+
+/**
+ * Steps of a chart render timed by {@link ChartMetrics}
+ */
+public enum ChartPhase {
+    /**
+     * building, encoding and signing the chart URL
+     */
+    URL,
+    /**
+     * opening a new connection, TCP and TLS handshakes included. Pooled connections skip it
+     */
+    CONNECT,
+    /**
+     * from sending the request to receiving the response headers, mostly the server render time. The non-blocking
+     * engine measures it from the time the request is submitted, connection setup included
+     */
+    FIRST_BYTE,
+    /**
+     * from the response headers to the last byte of the image
+     */
+    DOWNLOAD,
+    /**
+     * ImageIO decoding of the image by toBuffer()
+     */
+    DECODE
+}
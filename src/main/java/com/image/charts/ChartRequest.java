@@ -0,0 +1,82 @@
+package com.image.charts;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single chart render request, as handed by {@link ImageCharts} to an {@link ImageChartsClient}
+ */
+final class ChartRequest {
+    private static final String USER_AGENT = "java-image-charts/1.0.1";
+
+    private final String url;
+    private final String account;
+    private final int timeout;
+    private final Map<String, String> headers;
+    private final ChartTrace trace;
+
+    ChartRequest(String url, String account, int timeout) {
+        this(url, account, timeout, null);
+    }
+
+    /**
+     * @param trace  flight recorder trace filled while the request is sent, or null
+     */
+    ChartRequest(String url, String account, int timeout, ChartTrace trace) {
+        this(url, account, timeout, Collections.<String, String>emptyMap(), trace);
+    }
+
+    private ChartRequest(String url, String account, int timeout, Map<String, String> headers, ChartTrace trace) {
+        this.url = url;
+        this.account = account;
+        this.timeout = timeout;
+        this.headers = headers;
+        this.trace = trace;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return {String} enterprise account id (icac) or null
+     */
+    String getAccount() {
+        return account;
+    }
+
+    /**
+     * @return {int} request timeout in milliseconds
+     */
+    int getTimeout() {
+        return timeout;
+    }
+
+    String getUserAgent() {
+        return account != null ? USER_AGENT + " (" + account + ")" : USER_AGENT;
+    }
+
+    /**
+     * @return {Map} additional request headers (conditional headers...)
+     */
+    Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return {ChartTrace} flight recorder trace of this request, null when no recording is running
+     */
+    ChartTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * @return {ChartRequest} a copy of this request sending an additional header
+     */
+    ChartRequest withHeader(String name, String value) {
+        Map<String, String> copy = new LinkedHashMap<String, String>(headers);
+        copy.put(name, value);
+        return new ChartRequest(url, account, timeout, Collections.unmodifiableMap(copy), trace);
+    }
+}
@@ -0,0 +1,61 @@
+package com.image.charts;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event spanning a chart render, from the URL build to the image decoding
+ *
+ * Only referenced through {@link ChartEvents}.
+ */
+@Name("com.image.charts.ChartRequest")
+@Label("Chart Request")
+@Category("Image-Charts")
+@Description("Render of a chart through Image-Charts API")
+@StackTrace(false)
+final class ChartRequestEvent extends Event {
+    @Label("URL Hash")
+    @Description("Hash code of the signed chart URL, to correlate renders of the same chart without recording it")
+    int urlHash;
+
+    @Label("Chart Type")
+    String chartType;
+
+    @Label("Status")
+    @Description("HTTP status code, 0 if no response was received")
+    int status;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Cache Hit")
+    boolean cacheHit;
+
+    @Label("Error Code")
+    @Description("x-ic-error-code of API errors, or the exception class name of I/O failures")
+    String errorCode;
+
+    @Label("Connect")
+    @Timespan
+    long connect;
+
+    @Label("Wait")
+    @Description("Time to the first response byte")
+    @Timespan
+    long wait;
+
+    @Label("Download")
+    @Timespan
+    long download;
+
+    @Label("Decode")
+    @Timespan
+    long decode;
+}
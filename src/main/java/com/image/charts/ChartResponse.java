@@ -0,0 +1,183 @@
+package com.image.charts;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Response of the Image-Charts API. The body is streamed and must be consumed or closed by the caller.
+ */
+final class ChartResponse implements Closeable {
+    private final int status;
+    private final Map<String, String> headers;
+    private final InputStream body;
+    private final long contentLength;
+    private final Closeable resource;
+    private final byte[] buffered;
+    private ChartTrace trace;
+    private Runnable onClose;
+
+    /**
+     * @param status  HTTP status code
+     * @param headers  response headers (last value wins), looked up case-insensitively
+     * @param body  response body stream, may be null
+     * @param contentLength  body length in bytes or -1 if unknown
+     * @param resource  underlying resource released by {@link #close()}, may be null
+     */
+    ChartResponse(int status, Map<String, String> headers, InputStream body, long contentLength, Closeable resource) {
+        this.status = status;
+        TreeMap<String, String> sorted = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) sorted.putAll(headers);
+        this.headers = Collections.unmodifiableMap(sorted);
+        this.body = body;
+        this.contentLength = contentLength;
+        this.resource = resource;
+        this.buffered = null;
+    }
+
+    /**
+     * @param status  HTTP status code
+     * @param headers  response headers (last value wins), looked up case-insensitively
+     * @param body  fully buffered response body
+     */
+    ChartResponse(int status, Map<String, String> headers, byte[] body) {
+        this.status = status;
+        TreeMap<String, String> sorted = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) sorted.putAll(headers);
+        this.headers = Collections.unmodifiableMap(sorted);
+        this.body = new ByteArrayInputStream(body);
+        this.contentLength = body.length;
+        this.resource = null;
+        this.buffered = body;
+    }
+
+    /**
+     * @param chart  cached chart, served as a 200 response
+     */
+    ChartResponse(CachedChart chart) {
+        this(200, chart.getHeaders(), new ByteBufferInputStream(chart.getContent()), chart.getSize(), null);
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    boolean isSuccessful() {
+        return status >= 200 && status < 300;
+    }
+
+    String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    InputStream getBody() {
+        return body;
+    }
+
+    long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Read the remaining body in memory, without copy when the response is already buffered
+     *
+     * @return {byte[]} response body
+     * @throws IOException IOException
+     */
+    byte[] readBody() throws IOException {
+        if (buffered != null) return buffered;
+        if (body == null) return new byte[0];
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream(contentLength > 0 && contentLength < Integer.MAX_VALUE ? (int) contentLength : 8192);
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = body.read(chunk)) != -1) {
+            os.write(chunk, 0, read);
+        }
+        return os.toByteArray();
+    }
+
+    /**
+     * @return {ChartTrace} flight recorder trace of the render this response belongs to, or null
+     */
+    ChartTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * @param trace  flight recorder trace committed once this response is closed
+     */
+    void setTrace(ChartTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * @param onClose  called once this response is closed, after the body and the underlying resource
+     */
+    void setOnClose(Runnable onClose) {
+        this.onClose = onClose;
+    }
+
+    /**
+     * @return {ImageChartsException} the API error described by the x-ic-error-* response headers
+     */
+    ImageChartsException toException() {
+        return ImageChartsException.fromErrorHeaders(status, getHeader("x-ic-error-validation"), getHeader("x-ic-error-code"));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (body != null) body.close();
+        } finally {
+            try {
+                if (resource != null) resource.close();
+            } finally {
+                try {
+                    if (trace != null) trace.commit();
+                } finally {
+                    Runnable action = onClose;
+                    onClose = null;
+                    if (action != null) action.run();
+                }
+            }
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
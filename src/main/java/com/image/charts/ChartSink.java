@@ -0,0 +1,30 @@
+package com.image.charts;
+
+/**
+ * Receives the outcome of every chart rendered by a {@link BatchRenderer}.
+ *
+ * Methods are called concurrently from the renderer worker threads, implementations must be thread-safe.
+ */
+public interface ChartSink {
+
+    /**
+     * Called once a chart has been rendered
+     *
+     * @param index  position of the chart in the batch input
+     * @param chart  rendered chart
+     * @param image  raw PNG or GIF bytes returned by Image-Charts API
+     * @throws Exception any exception is reported to {@link #onFailure(int, ImageCharts, Throwable)}
+     */
+    void onSuccess(int index, ImageCharts chart, byte[] image) throws Exception;
+
+    /**
+     * Called when a chart could not be rendered or when {@link #onSuccess(int, ImageCharts, byte[])} failed
+     *
+     * @param index  position of the chart in the batch input
+     * @param chart  failed chart
+     * @param error  an ImageChartsException for API errors, an IOException for transport errors
+     * @throws RuntimeException the chart is still counted as failed, the exception is thrown on the worker thread with
+     * error suppressed
+     */
+    void onFailure(int index, ImageCharts chart, Throwable error);
+}
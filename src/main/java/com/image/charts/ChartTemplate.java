@@ -0,0 +1,157 @@
+package com.image.charts;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of an {@link ImageCharts} configuration (endpoint, secret, timeout, client and parameters).
+ *
+ * A template is safe to share between any number of threads. {@link #with(String, Object)} derives a new template in
+ * constant time: it only records the changed parameter on top of the template it comes from, the parameters of the
+ * parent are shared and never copied. {@link #toChart()} hands out a fresh {@link ImageCharts} reading the template
+ * parameters until it is modified, at which point it copies them (copy-on-write).
+ *
+ * {@code ChartTemplate base = new ImageCharts().cht("bvg").chs("700x300").chco("fdb45c,27c9c2").toTemplate();}
+ * {@code byte[] image = base.with("chd", "a:10,20,30").with("chtt", "Sales").toChart().toBytes();}
+ */
+public final class ChartTemplate {
+    // derivation chains longer than this are flattened so that lookups and rendering stay cheap
+    private static final int MAX_DEPTH = 16;
+
+    private final Settings settings;
+    private final Map<String, Object> base;
+    private final Change changes;
+    private volatile Map<String, Object> params;
+
+    ChartTemplate(Settings settings, Map<String, Object> params) {
+        this(settings, Collections.unmodifiableMap(new LinkedHashMap<String, Object>(params)), null);
+    }
+
+    private ChartTemplate(Settings settings, Map<String, Object> base, Change changes) {
+        this.settings = settings;
+        this.base = base;
+        this.changes = changes;
+        if (changes == null) this.params = base;
+    }
+
+    /**
+     * Derive a template where a parameter is set, this template is left untouched
+     *
+     * @param param  Image-Charts parameter name (cht, chd, chtt...)
+     * @param value  parameter value
+     * @return {ChartTemplate} a new template sharing this template parameters
+     */
+    public ChartTemplate with(String param, Object value) {
+        if (param == null) throw new IllegalArgumentException("param must not be null");
+
+        int depth = changes != null ? changes.depth + 1 : 1;
+        if (depth > MAX_DEPTH) {
+            return new ChartTemplate(settings, getParams(), new Change(param, value, null, 1));
+        }
+        return new ChartTemplate(settings, base, new Change(param, value, changes, depth));
+    }
+
+    /**
+     * @param param  Image-Charts parameter name
+     * @return {Object} the parameter value, or null if not set
+     */
+    public Object get(String param) {
+        for (Change change = changes; change != null; change = change.next) {
+            if (change.param.equals(param)) return change.value;
+        }
+        return base.get(param);
+    }
+
+    /**
+     * @return {Map} read-only view of the parameters, in the order they were first set
+     */
+    public Map<String, Object> getParams() {
+        Map<String, Object> params = this.params;
+        if (params == null) {
+            // LinkedHashMap keeps the position of the first insertion, exactly like successive ImageCharts setters
+            LinkedHashMap<String, Object> merged = new LinkedHashMap<String, Object>(base);
+            Change[] chain = new Change[changes.depth];
+            for (Change change = changes; change != null; change = change.next) {
+                chain[change.depth - 1] = change;
+            }
+            for (Change change : chain) {
+                merged.put(change.param, change.value);
+            }
+            params = Collections.unmodifiableMap(merged);
+            this.params = params;
+        }
+        return params;
+    }
+
+    /**
+     * @return {ImageCharts} a new chart configured from this template, it may be modified without affecting the template
+     */
+    public ImageCharts toChart() {
+        return new ImageCharts(settings, getParams());
+    }
+
+    /**
+     * Compile this template into a URL generator where only the given parameters vary
+     *
+     * @param params  names of the varying parameters, they may or may not be set on this template
+     * @return {ChartUrlTemplate}
+     */
+    public ChartUrlTemplate compile(String... params) {
+        return new ChartUrlTemplate(settings, getParams(), params);
+    }
+
+    /**
+     * Get the full Image-Charts API url (signed and encoded if necessary)
+     *
+     * @return {String} full generated url
+     * @throws MalformedURLException MalformedURLException
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     * @throws NoSuchAlgorithmException NoSuchAlgorithmException
+     * @throws InvalidKeyException InvalidKeyException
+     */
+    public String toURL() throws MalformedURLException, UnsupportedEncodingException, NoSuchAlgorithmException, InvalidKeyException {
+        return toChart().toURL();
+    }
+
+    /**
+     * Endpoint, credentials and client of a chart, immutable so they can be shared by every derived template
+     */
+    static final class Settings {
+        final String protocol;
+        final String host;
+        final Integer port;
+        final String pathname;
+        final String secret;
+        final Integer timeout;
+        final ImageChartsClient client;
+
+        Settings(String protocol, String host, Integer port, String pathname, String secret, Integer timeout, ImageChartsClient client) {
+            this.protocol = protocol;
+            this.host = host;
+            this.port = port;
+            this.pathname = pathname;
+            this.secret = secret;
+            this.timeout = timeout;
+            this.client = client;
+        }
+    }
+
+    private static final class Change {
+        final String param;
+        final Object value;
+        final Change next;
+        final int depth;
+
+        Change(String param, Object value, Change next, int depth) {
+            this.param = param;
+            this.value = value;
+            this.next = next;
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.image.charts;
+
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Timings and outcome of one chart render, collected for its {@link ChartRequestEvent}
+ *
+ * Only created while a flight recording has the event enabled. A trace is filled by a single thread at a time: the
+ * rendering thread, or the I/O thread of the non-blocking engine before it completes the render future.
+ */
+final class ChartTrace {
+    /**
+     * HttpContext attribute holding the trace of the request being sent
+     */
+    static final String ATTRIBUTE = "com.image.charts.trace";
+
+    private final Object event;
+    String url;
+    String chartType;
+    long connectNanos;
+    long waitNanos;
+    long downloadNanos;
+    long decodeNanos;
+    int status;
+    long bytes;
+    boolean cacheHit;
+    String errorCode;
+    private boolean committed;
+
+    /**
+     * @param event  begun flight recorder event, typed as Object so that this class loads without jdk.jfr
+     */
+    ChartTrace(Object event) {
+        this.event = event;
+    }
+
+    Object getEvent() {
+        return event;
+    }
+
+    /**
+     * @return {ChartTrace} trace of the request sent within this context, or null
+     */
+    static ChartTrace of(HttpContext context) {
+        return context != null ? (ChartTrace) context.getAttribute(ATTRIBUTE) : null;
+    }
+
+    /**
+     * Record why the render failed
+     */
+    void fail(Throwable error) {
+        if (error instanceof ImageChartsException) {
+            ImageChartsException apiError = (ImageChartsException) error;
+            this.status = apiError.getStatusCode();
+            this.errorCode = apiError.getErrorCode();
+        } else {
+            this.errorCode = error.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * End the render and write its event, only the first call has an effect
+     */
+    void commit() {
+        if (committed) return;
+        committed = true;
+        ChartEvents.commit(this);
+    }
+}
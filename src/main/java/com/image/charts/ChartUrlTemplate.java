@@ -0,0 +1,136 @@
+package com.image.charts;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of a {@link ChartTemplate} generating URLs where only a few parameters vary.
+ *
+ * Protocol, host, path and every static parameter are percent-encoded once, when the template is compiled. Generating a
+ * URL then only copies these pre-encoded segments and encodes the varying values into the caller's buffer: no map
+ * iteration, intermediate string or {@link java.net.URL} instance is involved. Generated URLs are identical to the ones
+ * {@link ImageCharts#toURL()} returns for the same parameters, including the ichm signature.
+ *
+ * Instances are immutable and can be shared between threads.
+ *
+ * {@code ChartUrlTemplate urls = template.compile("chd");}
+ * {@code StringBuilder buffer = new StringBuilder(); urls.appendTo(buffer, "a:10,20,30");}
+ */
+public final class ChartUrlTemplate {
+    private final String[] params;
+    private final String[] segments;
+    private final int[] slots;
+    private final int queryStart;
+    private final String secret;
+    private final boolean staticAccount;
+    private final int accountSlot;
+
+    ChartUrlTemplate(ChartTemplate.Settings settings, Map<String, Object> templateParams, String[] params) {
+        this.params = params.clone();
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] == null) throw new IllegalArgumentException("params must not be null");
+            for (int j = 0; j < i; j++) {
+                if (params[i].equals(params[j])) throw new IllegalArgumentException("duplicated param " + params[i]);
+            }
+        }
+
+        StringBuilder segment = UrlEncoding.appendOrigin(new StringBuilder(), settings.protocol, settings.host, settings.port, settings.pathname);
+        this.queryStart = segment.length();
+
+        List<String> segments = new ArrayList<String>();
+        List<Integer> slots = new ArrayList<Integer>();
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : templateParams.entrySet()) {
+            if (!first) segment.append('&');
+            first = false;
+            segment.append(entry.getKey()).append('=');
+            int slot = indexOf(entry.getKey());
+            if (slot != -1) {
+                segments.add(segment.toString());
+                slots.add(slot);
+                segment.setLength(0);
+            } else {
+                UrlEncoding.appendEncoded(segment, entry.getValue());
+            }
+        }
+        // varying params unknown to the template come last, like setting them on a chart created from the template
+        for (int slot = 0; slot < params.length; slot++) {
+            if (templateParams.containsKey(params[slot])) continue;
+            if (!first) segment.append('&');
+            first = false;
+            segment.append(params[slot]).append('=');
+            segments.add(segment.toString());
+            slots.add(slot);
+            segment.setLength(0);
+        }
+        segments.add(segment.toString());
+
+        this.segments = segments.toArray(new String[0]);
+        this.slots = new int[slots.size()];
+        for (int i = 0; i < this.slots.length; i++) {
+            this.slots[i] = slots.get(i);
+        }
+
+        this.secret = settings.secret != null && settings.secret.length() > 0 ? settings.secret : null;
+        this.accountSlot = indexOf("icac");
+        this.staticAccount = accountSlot == -1 && templateParams.containsKey("icac");
+    }
+
+    /**
+     * @return {String[]} names of the varying parameters, in the order their values are expected
+     */
+    public String[] getParams() {
+        return params.clone();
+    }
+
+    /**
+     * Generate a URL
+     *
+     * @param values  one value per varying parameter, in {@link #getParams()} order
+     * @return {String} full generated url
+     * @throws NoSuchAlgorithmException NoSuchAlgorithmException
+     * @throws InvalidKeyException InvalidKeyException
+     */
+    public String toURL(Object... values) throws NoSuchAlgorithmException, InvalidKeyException {
+        return appendTo(new StringBuilder(segments[0].length() + 128), values).toString();
+    }
+
+    /**
+     * Append a URL to a buffer, typically one reused for every generated URL
+     *
+     * @param out  destination buffer
+     * @param values  one value per varying parameter, in {@link #getParams()} order
+     * @return {StringBuilder} out
+     * @throws NoSuchAlgorithmException NoSuchAlgorithmException
+     * @throws InvalidKeyException InvalidKeyException
+     */
+    public StringBuilder appendTo(StringBuilder out, Object... values) throws NoSuchAlgorithmException, InvalidKeyException {
+        if (values.length != params.length) {
+            throw new IllegalArgumentException("expected " + params.length + " values for " + Arrays.toString(params) + ", got " + values.length);
+        }
+
+        int start = out.length();
+        for (int i = 0; i < slots.length; i++) {
+            out.append(segments[i]);
+            UrlEncoding.appendEncoded(out, values[slots[i]]);
+        }
+        out.append(segments[slots.length]);
+
+        if (secret != null && (staticAccount || accountSlot != -1)) {
+            int end = out.length();
+            UrlSigner.appendSignature(out.append("&ichm="), start + queryStart, end, secret);
+        }
+        return out;
+    }
+
+    private int indexOf(String param) {
+        for (int i = 0; i < params.length; i++) {
+            if (params[i].equals(param)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,212 @@
+package com.image.charts;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails chart requests fast while the endpoint is unhealthy.
+ *
+ * CLOSED: requests flow and their outcomes are kept over the last windowSize requests. Failures are I/O errors and
+ * 429 or 5xx responses, validation errors are not. Once at least minimumRequests were seen and the failure rate reaches
+ * failureRateThreshold, the breaker opens.
+ * OPEN: every request is rejected at once with an {@link ImageChartsException} of error code IC_CIRCUIT_OPEN, for
+ * openDuration milliseconds.
+ * HALF_OPEN: halfOpenRequests trial requests are let through. If they all succeed the breaker closes, the first failure
+ * opens it again. Only the outcomes of the trials count: requests admitted before a state change are released without
+ * effect.
+ *
+ * {@code ImageChartsClient.builder().circuitBreaker(CircuitBreaker.builder().failureRateThreshold(0.5).build()).build();}
+ */
+public final class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final double failureRateThreshold;
+    private final int minimumRequests;
+    private final long openDuration;
+    private final int halfOpenRequests;
+    private final boolean[] outcomes;
+    private int recorded;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private long generation;
+    private int trials;
+    private int trialSuccesses;
+
+    private CircuitBreaker(Builder builder) {
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.minimumRequests = Math.min(builder.minimumRequests, builder.windowSize);
+        this.openDuration = TimeUnit.MILLISECONDS.toNanos(builder.openDuration);
+        this.halfOpenRequests = builder.halfOpenRequests;
+        this.outcomes = new boolean[builder.windowSize];
+    }
+
+    /**
+     * @return {Builder} a new circuit breaker builder initialized with default settings
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return {State} current state, an expired OPEN state is reported as HALF_OPEN
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration) return State.HALF_OPEN;
+        return state;
+    }
+
+    /**
+     * @return {double} failure rate over the current window, in [0, 1]
+     */
+    public synchronized double getFailureRate() {
+        int size = Math.min(recorded, outcomes.length);
+        return size == 0 ? 0 : failures / (double) size;
+    }
+
+    /**
+     * @return {Permit} the admission of the request, to be released by exactly one on* call, or null if it is rejected
+     */
+    synchronized Permit tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDuration) return null;
+            state = State.HALF_OPEN;
+            generation++;
+            trials = 0;
+            trialSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trials >= halfOpenRequests) return null;
+            trials++;
+            return new Permit(generation, true);
+        }
+        return new Permit(generation, false);
+    }
+
+    synchronized void onSuccess(Permit permit) {
+        if (permit.generation != generation) return;
+        if (permit.trial) {
+            if (++trialSuccesses >= halfOpenRequests) close();
+        } else {
+            record(false);
+        }
+    }
+
+    synchronized void onFailure(Permit permit) {
+        if (permit.generation != generation) return;
+        if (permit.trial) {
+            open();
+        } else {
+            record(true);
+            int size = Math.min(recorded, outcomes.length);
+            if (size >= minimumRequests && failures >= failureRateThreshold * size) open();
+        }
+    }
+
+    /**
+     * Release a request telling nothing about the endpoint health (cancelled, rejected by the concurrency limit...),
+     * a trial gives its slot back
+     */
+    synchronized void onIgnored(Permit permit) {
+        if (permit.generation == generation && permit.trial) trials--;
+    }
+
+    private void record(boolean failure) {
+        int slot = recorded % outcomes.length;
+        if (recorded >= outcomes.length && outcomes[slot]) failures--;
+        outcomes[slot] = failure;
+        if (failure) failures++;
+        recorded++;
+        if (recorded == 2 * outcomes.length) recorded = outcomes.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        generation++;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        generation++;
+        recorded = 0;
+        failures = 0;
+    }
+
+    /**
+     * Admission of a request: the state it was let through in, a trial in HALF_OPEN or a regular request in CLOSED
+     */
+    static final class Permit {
+        private final long generation;
+        private final boolean trial;
+
+        private Permit(long generation, boolean trial) {
+            this.generation = generation;
+            this.trial = trial;
+        }
+    }
+
+    public static final class Builder {
+        private double failureRateThreshold = 0.5;
+        private int minimumRequests = 20;
+        private int windowSize = 100;
+        private long openDuration = 5000;
+        private int halfOpenRequests = 3;
+
+        private Builder() {
+        }
+
+        /**
+         * @param failureRateThreshold  failure rate opening the breaker, in ]0, 1]. Default : 0.5
+         * @return {Builder}
+         */
+        public Builder failureRateThreshold(double failureRateThreshold) {
+            if (failureRateThreshold <= 0 || failureRateThreshold > 1) throw new IllegalArgumentException("failureRateThreshold must be in ]0, 1]");
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * @param minimumRequests  requests to observe before the failure rate may open the breaker. Default : 20
+         * @return {Builder}
+         */
+        public Builder minimumRequests(int minimumRequests) {
+            this.minimumRequests = minimumRequests;
+            return this;
+        }
+
+        /**
+         * @param windowSize  number of latest requests the failure rate is computed on. Default : 100
+         * @return {Builder}
+         */
+        public Builder windowSize(int windowSize) {
+            if (windowSize < 1) throw new IllegalArgumentException("windowSize must be at least 1");
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * @param openDuration  time (in millisecond) requests are rejected once the breaker opens. Default : 5000
+         * @return {Builder}
+         */
+        public Builder openDuration(long openDuration) {
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        /**
+         * @param halfOpenRequests  trial requests deciding whether the breaker closes again. Default : 3
+         * @return {Builder}
+         */
+        public Builder halfOpenRequests(int halfOpenRequests) {
+            if (halfOpenRequests < 1) throw new IllegalArgumentException("halfOpenRequests must be at least 1");
+            this.halfOpenRequests = halfOpenRequests;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.image.charts;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive bound on the chart requests an {@link ImageChartsClient} keeps in flight (AIMD).
+ *
+ * A request beyond the limit is rejected at once with an {@link ImageChartsException} of error code
+ * IC_CONCURRENCY_LIMIT instead of queueing. The limit grows by one after each success obtained while at least half of it
+ * was in use (additive increase), and is multiplied by backoffRatio after each overload sign (multiplicative decrease):
+ * an I/O failure, a 429 or 5xx response, or a response slower than maxLatency. When the endpoint degrades, the client
+ * therefore sheds load within a few requests, instead of piling up threads until the timeout. A request is in flight
+ * until its response body is read or closed, so a slow download counts as a slow response.
+ *
+ * {@code ImageChartsClient.builder().concurrencyLimit(ConcurrencyLimit.builder().maxLimit(100).build()).build();}
+ */
+public final class ConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long maxLatency;
+    private double limit;
+    private int inFlight;
+
+    private ConcurrencyLimit(Builder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.maxLatency = TimeUnit.MILLISECONDS.toNanos(builder.maxLatency);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, builder.initialLimit));
+    }
+
+    /**
+     * @return {Builder} a new concurrency limit builder initialized with default settings
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return {int} current number of requests allowed in flight
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return {int} current number of requests in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return {boolean} true if the request may be sent, it must then be released by exactly one on* call
+     */
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) return false;
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * @param latency  request duration in nanoseconds
+     */
+    synchronized void onSuccess(long latency) {
+        if (latency > maxLatency) {
+            decrease();
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+        inFlight--;
+    }
+
+    synchronized void onDropped() {
+        decrease();
+        inFlight--;
+    }
+
+    /**
+     * Release a request telling nothing about the endpoint health (cancelled...)
+     */
+    synchronized void onIgnored() {
+        inFlight--;
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    public static final class Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double backoffRatio = 0.9;
+        private long maxLatency = 2000;
+
+        private Builder() {
+        }
+
+        /**
+         * @param initialLimit  requests allowed in flight before any feedback. Default : 20
+         * @return {Builder}
+         */
+        public Builder initialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * @param minLimit  lower bound of the limit. Default : 1
+         * @return {Builder}
+         */
+        public Builder minLimit(int minLimit) {
+            if (minLimit < 1) throw new IllegalArgumentException("minLimit must be at least 1");
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        /**
+         * @param maxLimit  upper bound of the limit, at most the client maxConnections makes sense. Default : 200
+         * @return {Builder}
+         */
+        public Builder maxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * @param backoffRatio  factor applied to the limit on each overload sign, in ]0, 1[. Default : 0.9
+         * @return {Builder}
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            if (backoffRatio <= 0 || backoffRatio >= 1) throw new IllegalArgumentException("backoffRatio must be in ]0, 1[");
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * @param maxLatency  response time (in millisecond) above which a success still counts as overload. Default : 2000
+         * @return {Builder}
+         */
+        public Builder maxLatency(long maxLatency) {
+            this.maxLatency = maxLatency;
+            return this;
+        }
+
+        public ConcurrencyLimit build() {
+            return new ConcurrencyLimit(this);
+        }
+    }
+}
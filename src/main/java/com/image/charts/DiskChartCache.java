@@ -0,0 +1,358 @@
+package com.image.charts;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent, content-addressed {@link ChartCache} storing chart images in a directory.
+ *
+ * Each image is stored in a file named after the SHA-256 of its chart URL. An index (size, timestamps and headers of
+ * every entry, least recently used first) is kept in memory and journaled to the directory: each stored entry is
+ * appended to it, {@link #flush()} and {@link #close()} rewrite it compacted. Images missing from the index are
+ * recovered from the files themselves, without their headers. Entries are evicted least recently
+ * used first once the total size exceeds {@link Builder#maxBytes(long)}, and on access once older than
+ * {@link Builder#maxAge(long)}. Hits are served through memory-mapped, read-only buffers.
+ *
+ * Files are written to a temporary name then atomically renamed, so concurrent readers never observe a partial image.
+ */
+public class DiskChartCache implements ChartCache, Closeable {
+    private static final String INDEX_FILE = "index.jsonl";
+    private static final String CHART_SUFFIX = ".chart";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxAge;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+    // guards the index file, taken before the cache monitor so that appends and rewrites keep the in-memory order
+    private final Object indexLock = new Object();
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private boolean dirty;
+
+    private DiskChartCache(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.maxBytes = builder.maxBytes;
+        this.maxAge = builder.maxAge;
+        Files.createDirectories(directory);
+        load();
+    }
+
+    /**
+     * @param directory  directory holding the cached images, created if missing
+     * @return {Builder} a new disk cache builder initialized with default settings
+     */
+    public static Builder builder(Path directory) {
+        return new Builder(directory);
+    }
+
+    @Override
+    public CachedChart get(String key) throws IOException {
+        String name = fileName(key);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(name);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            if (maxAge > 0 && now - entry.created > maxAge) {
+                remove(name);
+                evictions++;
+                misses++;
+                return null;
+            }
+            entry.accessed = now;
+            dirty = true;
+            hits++;
+        }
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory.resolve(name), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            synchronized (this) {
+                if (entries.get(name) == entry) remove(name);
+                hits--;
+                misses++;
+            }
+            return null;
+        }
+        try {
+            ByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CachedChart(content, entry.headers, entry.created);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public void put(String key, CachedChart chart) throws IOException {
+        int size = chart.getSize();
+        if (size > maxBytes) return;
+
+        String name = fileName(key);
+        Path temp = Files.createTempFile(directory, name, TEMP_SUFFIX);
+        try {
+            FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+            try {
+                ByteBuffer content = chart.getContent();
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+            } finally {
+                channel.close();
+            }
+            Files.move(temp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        synchronized (indexLock) {
+            String line;
+            synchronized (this) {
+                Entry entry = new Entry(size, chart.getStoredAt(), System.currentTimeMillis(), chart.getHeaders());
+                Entry previous = entries.put(name, entry);
+                if (previous != null) bytes -= previous.size;
+                bytes += size;
+                dirty = true;
+                evictOverflow();
+                line = toJson(name, entry);
+            }
+            // a later line for the same image supersedes the earlier ones until the index is compacted
+            BufferedWriter writer = Files.newBufferedWriter(directory.resolve(INDEX_FILE), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            try {
+                writer.write(line);
+                writer.newLine();
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, entries.size(), bytes);
+    }
+
+    /**
+     * Rewrite the index compacted, with the access order and times, if it changed since the last flush
+     *
+     * @throws IOException IOException
+     */
+    public void flush() throws IOException {
+        synchronized (indexLock) {
+            List<String> lines = new ArrayList<String>();
+            synchronized (this) {
+                if (!dirty) return;
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    lines.add(toJson(entry.getKey(), entry.getValue()));
+                }
+                dirty = false;
+            }
+
+            Path temp = Files.createTempFile(directory, INDEX_FILE, TEMP_SUFFIX);
+            BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8);
+            try {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            } finally {
+                writer.close();
+            }
+            Files.move(temp, directory.resolve(INDEX_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Flush the index, cached images stay on disk for the next instance
+     *
+     * @throws IOException IOException
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void load() throws IOException {
+        Path index = directory.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            int lines = 0;
+            BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines++;
+                    try {
+                        JSONObject json = new JSONObject(line);
+                        Map<String, String> headers = new LinkedHashMap<String, String>();
+                        JSONObject jsonHeaders = json.getJSONObject("headers");
+                        for (String header : jsonHeaders.keySet()) {
+                            headers.put(header, jsonHeaders.getString(header));
+                        }
+                        String name = json.getString("name");
+                        Path file = directory.resolve(name);
+                        if (name.endsWith(CHART_SUFFIX) && Files.isRegularFile(file) && Files.size(file) == json.getLong("size")) {
+                            entries.put(name, new Entry(json.getLong("size"), json.getLong("created"), json.getLong("accessed"), headers));
+                        } else {
+                            entries.remove(name);
+                        }
+                    } catch (JSONException e) {
+                        // skip corrupted lines, the file scan below recovers their images
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            // superseded or stale lines are dropped on the next flush
+            if (lines != entries.size()) dirty = true;
+        }
+
+        DirectoryStream<Path> files = Files.newDirectoryStream(directory);
+        try {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(CHART_SUFFIX) && !entries.containsKey(name)) {
+                    long modified = Files.getLastModifiedTime(file).toMillis();
+                    entries.put(name, new Entry(Files.size(file), modified, modified, null));
+                    dirty = true;
+                }
+            }
+        } finally {
+            files.close();
+        }
+
+        for (Entry entry : entries.values()) {
+            bytes += entry.size;
+        }
+        evictOverflow();
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> entry = eldest.next();
+            eldest.remove();
+            bytes -= entry.getValue().size;
+            evictions++;
+            delete(entry.getKey());
+        }
+    }
+
+    private void remove(String name) {
+        Entry entry = entries.remove(name);
+        if (entry != null) {
+            bytes -= entry.size;
+            dirty = true;
+            delete(name);
+        }
+    }
+
+    private void delete(String name) {
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            // a mapped file may not be deletable on some platforms, the next load() scan will pick it up again
+        }
+    }
+
+    private static String toJson(String name, Entry entry) {
+        return new JSONObject()
+            .put("name", name)
+            .put("size", entry.size)
+            .put("created", entry.created)
+            .put("accessed", entry.accessed)
+            .put("headers", entry.headers)
+            .toString();
+    }
+
+    static String fileName(String key) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return Hex.encode(digest.digest(key.getBytes(StandardCharsets.UTF_8))) + CHART_SUFFIX;
+    }
+
+    private static final class Entry {
+        final long size;
+        final long created;
+        final Map<String, String> headers;
+        long accessed;
+
+        Entry(long size, long created, long accessed, Map<String, String> headers) {
+            this.size = size;
+            this.created = created;
+            this.accessed = accessed;
+            this.headers = headers != null ? headers : new LinkedHashMap<String, String>();
+        }
+    }
+
+    public static final class Builder {
+        private final Path directory;
+        private long maxBytes = 256L * 1024 * 1024;
+        private long maxAge = 0;
+
+        private Builder(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * @param maxBytes  total size (in bytes) of the cached images above which least recently used entries are evicted. Default : 256 MiB
+         * @return {Builder}
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param maxAge  age (in millisecond) after which an entry is evicted instead of served, 0 to disable. Default : 0
+         * @return {Builder}
+         */
+        public Builder maxAge(long maxAge) {
+            this.maxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * Create the directory if needed and load its index
+         *
+         * @return {DiskChartCache}
+         * @throws IOException IOException
+         */
+        public DiskChartCache build() throws IOException {
+            return new DiskChartCache(this);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.image.charts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reduction of long series to about as many points as the chart can display, applied before chart data is encoded.
+ *
+ * Points are evenly spaced (x is the index in the series). Two methods are available:
+ * <ul>
+ * <li>{@link #lttb()} Largest-Triangle-Three-Buckets keeps, in each bucket, the point forming the largest triangle with
+ * the previously kept point and the average of the next bucket. It preserves the visual shape of line charts with one
+ * point per pixel.</li>
+ * <li>{@link #minMax()} keeps the minimum and the maximum of each bucket, so that every peak remains visible, with two
+ * points per pixel.</li>
+ * </ul>
+ * The first and last points of a series are always kept. Several long series are reduced in parallel on the common
+ * fork-join pool.
+ *
+ * {@code new ImageCharts().cht("lc").chs("700x300").chd(series, ChartDataFormat.AUTO, Downsampling.lttb());}
+ */
+public final class Downsampling {
+    // below this number of points, reducing series one after the other is faster than forking
+    private static final int PARALLEL_THRESHOLD = 100000;
+
+    private final boolean minMax;
+    private final int points;
+
+    private Downsampling(boolean minMax, int points) {
+        if (points < 0) throw new IllegalArgumentException("points must be positive");
+        this.minMax = minMax;
+        this.points = points;
+    }
+
+    /**
+     * @return {Downsampling} Largest-Triangle-Three-Buckets reduction to one point per pixel of the chart width (chs)
+     */
+    public static Downsampling lttb() {
+        return new Downsampling(false, 0);
+    }
+
+    /**
+     * @param points  maximum number of points kept in each series
+     * @return {Downsampling} Largest-Triangle-Three-Buckets reduction
+     */
+    public static Downsampling lttb(int points) {
+        return new Downsampling(false, points);
+    }
+
+    /**
+     * @return {Downsampling} min/max bucketing to two points per pixel of the chart width (chs)
+     */
+    public static Downsampling minMax() {
+        return new Downsampling(true, 0);
+    }
+
+    /**
+     * @param points  maximum number of points kept in each series
+     * @return {Downsampling} min/max bucketing
+     */
+    public static Downsampling minMax(int points) {
+        return new Downsampling(true, points);
+    }
+
+    /**
+     * @param chartWidth  chart width in pixels, used when no explicit number of points was given
+     * @return {int} maximum number of points kept in each series
+     */
+    public int getPoints(int chartWidth) {
+        if (points > 0) return points;
+        if (chartWidth <= 0) throw new IllegalStateException("chs must be defined to downsample to the chart width");
+        return minMax ? 2 * chartWidth : chartWidth;
+    }
+
+    /**
+     * Reduce a series, it is returned as is if it is already short enough
+     *
+     * @param values  series to reduce, left untouched. NaN is a missing value
+     * @param chartWidth  chart width in pixels, used when no explicit number of points was given
+     * @return {double[]} reduced series
+     */
+    public double[] apply(double[] values, int chartWidth) {
+        int threshold = getPoints(chartWidth);
+        if (values.length <= threshold) return values;
+        return minMax ? minMax(values, threshold) : lttb(values, threshold);
+    }
+
+    /**
+     * Reduce several series, in parallel when they are long
+     *
+     * @param series  series to reduce, left untouched. NaN is a missing value
+     * @param chartWidth  chart width in pixels, used when no explicit number of points was given
+     * @return {double[][]} reduced series
+     */
+    public double[][] apply(final double[][] series, final int chartWidth) {
+        final double[][] reduced = new double[series.length][];
+        long total = 0;
+        for (double[] values : series) {
+            total += values.length;
+        }
+
+        if (series.length < 2 || total < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < series.length; i++) {
+                reduced[i] = apply(series[i], chartWidth);
+            }
+            return reduced;
+        }
+
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(series.length);
+        for (int i = 0; i < series.length; i++) {
+            final int index = i;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    reduced[index] = apply(series[index], chartWidth);
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(tasks);
+        return reduced;
+    }
+
+    static double[] lttb(double[] values, int threshold) {
+        int length = values.length;
+        if (threshold >= length || threshold == 0) return values;
+        if (threshold < 3) {
+            return threshold == 1 ? new double[]{values[0]} : new double[]{values[0], values[length - 1]};
+        }
+
+        double[] sampled = new double[threshold];
+        double every = (double) (length - 2) / (threshold - 2);
+        int a = 0;
+        sampled[0] = values[0];
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // average of the next bucket, the third vertex of the triangles
+            int averageFrom = (int) ((i + 1) * every) + 1;
+            int averageTo = Math.min((int) ((i + 2) * every) + 1, length);
+            double averageX = 0;
+            double averageY = 0;
+            int count = 0;
+            for (int j = averageFrom; j < averageTo; j++) {
+                if (Double.isNaN(values[j])) continue;
+                averageX += j;
+                averageY += values[j];
+                count++;
+            }
+            if (count > 0) {
+                averageX /= count;
+                averageY /= count;
+            } else {
+                averageX = averageFrom;
+                averageY = values[a];
+            }
+
+            int from = (int) (i * every) + 1;
+            int to = (int) ((i + 1) * every) + 1;
+            double ay = values[a];
+            double maxArea = -1;
+            int next = from;
+            for (int j = from; j < to; j++) {
+                double area = Math.abs((a - averageX) * (values[j] - ay) - (a - j) * (averageY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+
+            sampled[i + 1] = values[next];
+            a = next;
+        }
+
+        sampled[threshold - 1] = values[length - 1];
+        return sampled;
+    }
+
+    static double[] minMax(double[] values, int threshold) {
+        int length = values.length;
+        if (threshold >= length || threshold == 0) return values;
+        if (threshold < 4) return lttb(values, threshold);
+
+        // first and last points are kept apart, every bucket in between yields its min and max in series order
+        int buckets = (threshold - 2) / 2;
+        double every = (double) (length - 2) / buckets;
+        double[] sampled = new double[2 + 2 * buckets];
+        int s = 0;
+        sampled[s++] = values[0];
+
+        for (int b = 0; b < buckets; b++) {
+            int from = (int) (b * every) + 1;
+            int to = Math.min((int) ((b + 1) * every) + 1, length - 1);
+            int min = from;
+            int max = from;
+            for (int j = from; j < to; j++) {
+                if (Double.isNaN(values[min]) || values[j] < values[min]) min = j;
+                if (Double.isNaN(values[max]) || values[j] > values[max]) max = j;
+            }
+            if (min == max) {
+                sampled[s++] = values[min];
+            } else {
+                sampled[s++] = values[Math.min(min, max)];
+                sampled[s++] = values[Math.max(min, max)];
+            }
+        }
+
+        sampled[s++] = values[length - 1];
+        if (s == sampled.length) return sampled;
+        double[] trimmed = new double[s];
+        System.arraycopy(sampled, 0, trimmed, 0, s);
+        return trimmed;
+    }
+}
@@ -0,0 +1,155 @@
+package com.image.charts;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When an {@link ImageChartsClient} sends a duplicate ("hedged") chart request to cut tail latency.
+ *
+ * When the first byte of a response has not arrived after the hedging delay, the same request is sent once more. The
+ * first response wins and the other request is cancelled. The delay follows the observed latency: it is the given
+ * percentile of the last 1024 times to first byte, clamped between minDelay and maxDelay (maxDelay until 128 samples
+ * were collected). With the default 95th percentile, about 5% of the requests are candidates for a hedge.
+ *
+ * Hedges are bounded by a budget shared by every request of the policy: each request earns maxExtraLoad hedge, each
+ * hedge spends one, and at most 10 are kept for bursts on low traffic. When the server is slow as a whole, hedging stops
+ * adding load as soon as the budget is spent.
+ *
+ * {@code ImageChartsClient.builder().hedgingPolicy(HedgingPolicy.builder().percentile(95).maxExtraLoad(0.05).build()).build();}
+ */
+public final class HedgingPolicy {
+    /**
+     * Policy never hedging, used by default
+     */
+    public static final HedgingPolicy NONE = new HedgingPolicy(builder().maxExtraLoad(0));
+
+    private static final int SAMPLES = 1024;
+    private static final int REFRESH_EVERY = 128;
+    private static final int MAX_BURST = 10;
+
+    private final double percentile;
+    private final long minDelay;
+    private final long maxDelay;
+    private final double maxExtraLoad;
+    private final LoadBudget budget;
+    private final long[] samples = new long[SAMPLES];
+    private long recorded;
+    private volatile long delay;
+
+    private HedgingPolicy(Builder builder) {
+        this.percentile = builder.percentile;
+        this.minDelay = TimeUnit.MILLISECONDS.toNanos(builder.minDelay);
+        this.maxDelay = TimeUnit.MILLISECONDS.toNanos(builder.maxDelay);
+        this.maxExtraLoad = builder.maxExtraLoad;
+        this.budget = new LoadBudget(builder.maxExtraLoad, builder.maxExtraLoad > 0 ? MAX_BURST : 0);
+        this.delay = this.maxDelay;
+    }
+
+    /**
+     * @return {Builder} a new hedging policy builder initialized with default settings
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return {boolean} false if this policy never hedges
+     */
+    boolean isEnabled() {
+        return maxExtraLoad > 0;
+    }
+
+    /**
+     * @return {long} current hedging delay in milliseconds
+     */
+    public long getDelay() {
+        return TimeUnit.NANOSECONDS.toMillis(delay);
+    }
+
+    /**
+     * @return {long} current hedging delay in nanoseconds
+     */
+    long getDelayNanos() {
+        return delay;
+    }
+
+    /**
+     * Credit the hedging budget with a request
+     */
+    void onRequest() {
+        budget.deposit();
+    }
+
+    /**
+     * @return {boolean} true if a hedge may be sent, spending one from the budget
+     */
+    boolean tryHedge() {
+        return budget.tryWithdraw();
+    }
+
+    /**
+     * @param nanos  time to first byte of a response
+     */
+    synchronized void record(long nanos) {
+        samples[(int) (recorded % SAMPLES)] = nanos;
+        recorded++;
+        if (recorded % REFRESH_EVERY != 0) return;
+
+        long[] sorted = Arrays.copyOf(samples, (int) Math.min(recorded, SAMPLES));
+        Arrays.sort(sorted);
+        long value = sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile / 100 * sorted.length) - 1)];
+        delay = Math.max(minDelay, Math.min(maxDelay, value));
+    }
+
+    public static final class Builder {
+        private double percentile = 95;
+        private long minDelay = 10;
+        private long maxDelay = 1000;
+        private double maxExtraLoad = 0.05;
+
+        private Builder() {
+        }
+
+        /**
+         * @param percentile  percentile of the observed times to first byte after which a hedge is sent. Default : 95
+         * @return {Builder}
+         */
+        public Builder percentile(double percentile) {
+            if (percentile <= 0 || percentile > 100) throw new IllegalArgumentException("percentile must be in ]0, 100]");
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * @param minDelay  lower bound (in millisecond) of the hedging delay. Default : 10
+         * @return {Builder}
+         */
+        public Builder minDelay(long minDelay) {
+            this.minDelay = minDelay;
+            return this;
+        }
+
+        /**
+         * @param maxDelay  upper bound (in millisecond) of the hedging delay, used until enough latencies were observed. Default : 1000
+         * @return {Builder}
+         */
+        public Builder maxDelay(long maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * @param maxExtraLoad  hedges earned by each request, so the maximum extra load of hedging. Default : 0.05
+         * @return {Builder}
+         */
+        public Builder maxExtraLoad(double maxExtraLoad) {
+            if (maxExtraLoad < 0) throw new IllegalArgumentException("maxExtraLoad must be positive");
+            this.maxExtraLoad = maxExtraLoad;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+    }
+}
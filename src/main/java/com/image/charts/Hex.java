@@ -0,0 +1,32 @@
+package com.image.charts;
+
+/**
+ * Table-driven lowercase hexadecimal encoding
+ */
+final class Hex {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private Hex() {
+    }
+
+    /**
+     * Encode bytes into a preallocated array, two characters per byte
+     *
+     * @param bytes  bytes to encode
+     * @param length  number of bytes to encode, from index 0
+     * @param out  destination, at least 2 * length long
+     */
+    static void encode(byte[] bytes, int length, char[] out) {
+        for (int i = 0, c = 0; i < length; i++) {
+            int b = bytes[i];
+            out[c++] = DIGITS[(b >> 4) & 0xf];
+            out[c++] = DIGITS[b & 0xf];
+        }
+    }
+
+    static String encode(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        encode(bytes, bytes.length, chars);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,140 @@
+package com.image.charts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Transport of an {@link ImageChartsClient} built on the JDK HTTP client, negotiating HTTP/2
+ *
+ * Concurrent requests to the same host are multiplexed as streams of a single connection instead of each holding a
+ * pooled HTTP/1.1 connection. Over https, HTTP/2 is negotiated with ALPN; over plain http, the first request offers an
+ * h2c upgrade and the connection stays on HTTP/1.1 when the server declines it.
+ */
+final class Http2Transport {
+    private final HttpClient client;
+    private final int postThreshold;
+
+    Http2Transport(int postThreshold) {
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+        this.postThreshold = postThreshold;
+    }
+
+    /**
+     * Send the request and return once the response headers are received, the body being streamed
+     *
+     * @param url  chart URL, routed to its endpoint
+     */
+    ChartResponse send(ChartRequest chartRequest, String url) throws IOException {
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(newRequest(chartRequest, url), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a chart request");
+        }
+        long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        return new ChartResponse(response.statusCode(), headersOf(response.headers()), response.body(), contentLength, null);
+    }
+
+    /**
+     * Send the request, the response body is fully buffered once the future completes
+     *
+     * @param onResponseReceived  called once the response headers are received
+     */
+    CompletableFuture<ChartResponse> sendAsync(ChartRequest chartRequest, String url, final Runnable onResponseReceived) {
+        return client.sendAsync(newRequest(chartRequest, url), new HttpResponse.BodyHandler<byte[]>() {
+            @Override
+            public HttpResponse.BodySubscriber<byte[]> apply(HttpResponse.ResponseInfo info) {
+                onResponseReceived.run();
+                return HttpResponse.BodySubscribers.ofByteArray();
+            }
+        }).thenApply(new Function<HttpResponse<byte[]>, ChartResponse>() {
+            @Override
+            public ChartResponse apply(HttpResponse<byte[]> response) {
+                return new ChartResponse(response.statusCode(), headersOf(response.headers()), response.body());
+            }
+        });
+    }
+
+    /**
+     * Send the request and stream a successful response body straight to a file, other response bodies are discarded
+     *
+     * @param onResponseReceived  called once the response headers are received
+     * @return {CompletableFuture} response without body, its content length being the size of the file written
+     */
+    CompletableFuture<ChartResponse> sendAsync(ChartRequest chartRequest, String url, final File file, final Runnable onResponseReceived) {
+        return client.sendAsync(newRequest(chartRequest, url), new HttpResponse.BodyHandler<Path>() {
+            @Override
+            public HttpResponse.BodySubscriber<Path> apply(HttpResponse.ResponseInfo info) {
+                onResponseReceived.run();
+                if (info.statusCode() < 200 || info.statusCode() >= 300) return HttpResponse.BodySubscribers.replacing(null);
+                return HttpResponse.BodySubscribers.ofFile(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+        }).thenApply(new Function<HttpResponse<Path>, ChartResponse>() {
+            @Override
+            public ChartResponse apply(HttpResponse<Path> response) {
+                long written = response.body() != null ? file.length() : 0;
+                return new ChartResponse(response.statusCode(), headersOf(response.headers()), null, written, null);
+            }
+        });
+    }
+
+    /**
+     * Close the JDK client when the runtime allows it (Java 21 and later), its idle connections time out otherwise
+     */
+    void close() {
+        Object jdkClient = client;
+        if (!(jdkClient instanceof AutoCloseable)) return;
+        try {
+            ((AutoCloseable) jdkClient).close();
+        } catch (Exception e) {
+            // closing is best effort
+        }
+    }
+
+    private HttpRequest newRequest(ChartRequest chartRequest, String url) {
+        int queryStart = url.indexOf('?');
+        HttpRequest.Builder request;
+        if (postThreshold > 0 && queryStart != -1 && url.length() - queryStart - 1 > postThreshold) {
+            // same parameters and ichm signature as the query string, sent as a form body
+            request = HttpRequest.newBuilder(URI.create(url.substring(0, queryStart)))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(url.substring(queryStart + 1), StandardCharsets.UTF_8));
+        } else {
+            request = HttpRequest.newBuilder(URI.create(url)).GET();
+        }
+        request.header("User-Agent", chartRequest.getUserAgent());
+        for (Map.Entry<String, String> header : chartRequest.getHeaders().entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        if (chartRequest.getTimeout() > 0) request.timeout(Duration.ofMillis(chartRequest.getTimeout()));
+        return request.build();
+    }
+
+    private static Map<String, String> headersOf(HttpHeaders httpHeaders) {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, List<String>> header : httpHeaders.map().entrySet()) {
+            if (!header.getValue().isEmpty()) headers.put(header.getKey(), header.getValue().get(0));
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,116 @@
+package com.image.charts;
+
+import org.apache.http.client.utils.DateUtils;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HTTP caching rules (RFC 7234, private cache) applied by {@link ImageChartsClient} when HTTP caching is enabled
+ */
+final class HttpCachePolicy {
+    /**
+     * Response headers stored along with cached charts
+     */
+    static final String[] STORED_HEADERS = {"Content-Type", "Cache-Control", "Expires", "ETag", "Last-Modified", "Date", "Age"};
+
+    private HttpCachePolicy() {
+    }
+
+    /**
+     * @return {boolean} false if the response forbids caching (Cache-Control: no-store)
+     */
+    static boolean isStorable(ChartResponse response) {
+        return directive(response.getHeader("Cache-Control"), "no-store") == null;
+    }
+
+    /**
+     * @param chart  cached chart
+     * @param now  current time in millisecond since epoch
+     * @return {boolean} true if the chart can be served without contacting Image-Charts API
+     */
+    static boolean isFresh(CachedChart chart, long now) {
+        String cacheControl = chart.getHeader("Cache-Control");
+        if (directive(cacheControl, "no-cache") != null) return false;
+
+        long age = Math.max(0, now - chart.getStoredAt()) + seconds(chart.getHeader("Age")) * 1000;
+        return age < freshnessLifetime(chart);
+    }
+
+    /**
+     * @return {long} time (in millisecond) during which the chart is fresh since it was received
+     */
+    static long freshnessLifetime(CachedChart chart) {
+        String maxAge = directive(chart.getHeader("Cache-Control"), "max-age");
+        if (maxAge != null) return seconds(maxAge) * 1000;
+
+        Date date = parseDate(chart.getHeader("Date"));
+        Date expires = parseDate(chart.getHeader("Expires"));
+        if (expires != null) {
+            return expires.getTime() - (date != null ? date.getTime() : chart.getStoredAt());
+        }
+
+        // heuristic freshness: 10% of the time since the chart was last modified
+        Date lastModified = parseDate(chart.getHeader("Last-Modified"));
+        if (lastModified != null) {
+            return Math.max(0, (date != null ? date.getTime() : chart.getStoredAt()) - lastModified.getTime()) / 10;
+        }
+        return 0;
+    }
+
+    /**
+     * @return {ChartRequest} the request made conditional on the cached chart validators, or null if it has none
+     */
+    static ChartRequest revalidate(ChartRequest request, CachedChart chart) {
+        String etag = chart.getHeader("ETag");
+        String lastModified = chart.getHeader("Last-Modified");
+        if (etag == null && lastModified == null) return null;
+
+        if (etag != null) request = request.withHeader("If-None-Match", etag);
+        if (lastModified != null) request = request.withHeader("If-Modified-Since", lastModified);
+        return request;
+    }
+
+    /**
+     * @return {CachedChart} the cached chart updated with the headers of a 304 Not Modified response
+     */
+    static CachedChart refresh(CachedChart chart, ChartResponse notModified, long now) {
+        Map<String, String> headers = new LinkedHashMap<String, String>(chart.getHeaders());
+        headers.remove("Age");
+        for (String header : STORED_HEADERS) {
+            String value = notModified.getHeader(header);
+            if (value != null) headers.put(header, value);
+        }
+        return new CachedChart(chart.getContent(), headers, now);
+    }
+
+    /**
+     * @return {String} the directive value, an empty string for directives without value, null if absent
+     */
+    static String directive(String cacheControl, String name) {
+        if (cacheControl == null) return null;
+        for (String part : cacheControl.split(",")) {
+            String directive = part.trim();
+            int equals = directive.indexOf('=');
+            String key = equals != -1 ? directive.substring(0, equals).trim() : directive;
+            if (key.equalsIgnoreCase(name)) {
+                return equals != -1 ? directive.substring(equals + 1).trim().replace("\"", "") : "";
+            }
+        }
+        return null;
+    }
+
+    private static long seconds(String value) {
+        if (value == null) return 0;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Date parseDate(String value) {
+        return value != null ? DateUtils.parseDate(value) : null;
+    }
+}
@@ -1,36 +1,31 @@
 package com.image.charts;
 
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.json.JSONArray;
-import org.json.JSONObject;
-import org.json.JSONTokener;
-import sun.misc.BASE64Encoder;
-
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 public class ImageCharts {
-    private static final String DEFAULT_ENCODING = "UTF-8";
-
     private String secret;
     private Integer timeout = 5000;
     private String host = "image-charts.com";
@@ -38,6 +33,8 @@ public class ImageCharts {
     private Integer port = 443;
     private String pathname = "/chart";
     private Map<String, Object> query = new LinkedHashMap<String, Object>();
+    private boolean sharedQuery;
+    private ImageChartsClient client;
 
     /**
      * Free usage
@@ -85,7 +82,30 @@ public class ImageCharts {
     * @param timeout  Request timeout (in millisecond) when calling toBuffer() or toDataURI(). Default if null : 5000
     */
     public ImageCharts(String protocol, String host, Integer port, String pathname, String secret, Integer timeout) {
+        this(protocol, host, port, pathname, secret, timeout, null);
+    }
+
+    /**
+    * Free usage, rendering through a shared client
+    * @param client  pooled HTTP client used by toBuffer(), toFile() and toDataURI(). Default if null : ImageChartsClient.getDefault()
+    */
+    public ImageCharts(ImageChartsClient client) {
+        this(null, null, null, null, null, null, client);
+    }
+
+    /**
+    * On-premise, rendering through a shared client
+    * @param protocol  (On-Premise subscription only) custom protocol. Default if null : "https"
+    * @param host  (Enterprise, Enterprise+ and On-Premise subscription only) custom domain. Default if null : "image-charts.com"
+    * @param port  (On-Premise subscription only) custom port. Default if null "443"
+    * @param pathname  (On-Premise subscription only) custom pathname. Default if null "/chart"
+    * @param secret  (Enterprise and Enterprise+ subscription only) SECRET_KEY. Default : null
+    * @param timeout  Request timeout (in millisecond) when calling toBuffer() or toDataURI(). Default if null : 5000
+    * @param client  pooled HTTP client used by toBuffer(), toFile() and toDataURI(). Default if null : ImageChartsClient.getDefault()
+    */
+    public ImageCharts(String protocol, String host, Integer port, String pathname, String secret, Integer timeout, ImageChartsClient client) {
         this.secret = secret;
+        this.client = client != null ? client : ImageChartsClient.getDefault();
         if (timeout != null) this.timeout = timeout;
         if (host != null) this.host = host;
         if (protocol != null) this.protocol = protocol;
@@ -93,11 +113,36 @@ public class ImageCharts {
         if (pathname != null) this.pathname = pathname;
     }
 
+    /**
+     * Chart created by {@link ChartTemplate#toChart()}, reading the template parameters until it is modified
+     */
+    ImageCharts(ChartTemplate.Settings settings, Map<String, Object> params) {
+        this(settings.protocol, settings.host, settings.port, settings.pathname, settings.secret, settings.timeout, settings.client);
+        this.query = params;
+        this.sharedQuery = true;
+    }
+
     private ImageCharts clone(String key, Object value) {
+        if (this.sharedQuery) {
+            this.query = new LinkedHashMap<String, Object>(this.query);
+            this.sharedQuery = false;
+        }
         this.query.put(key, value);
         return this;
     }
 
+    /**
+     * Snapshot the current configuration into an immutable template that can be shared between threads and derived cheaply
+     *
+     * Later modifications of this chart do not affect the template.
+     *
+     * @return {ChartTemplate}
+     */
+    public ChartTemplate toTemplate() {
+        ChartTemplate.Settings settings = new ChartTemplate.Settings(this.protocol, this.host, this.port, this.pathname, this.secret, this.timeout, this.client);
+        return new ChartTemplate(settings, this.query);
+    }
+
     
     /**
     * bvg= grouped bar chart, bvs= stacked bar chart, lc=line chart, ls=sparklines, p=pie chart. gv=graph viz
@@ -132,6 +177,116 @@ public class ImageCharts {
     public ImageCharts chd(String chd) {
         return this.clone("chd", chd);
     }
+
+    /**
+    * chart data, encoded with exact values (a:)
+    *
+    * Examples :
+    * {@code ImageCharts chart = new ImageCharts().chd(new double[]{-100, 200.5, 75.55, 110});}
+    *
+    * @param values - single series. NaN is a missing value
+    * @return {ImageCharts}
+    * @see <a href="https://documentation.image-charts.com/reference/data-format/">Reference documentation</a>
+    */
+    public ImageCharts chd(double[] values) {
+        return this.chd(new double[][]{values}, ChartDataFormat.AWESOME);
+    }
+
+    /**
+    * chart data, encoded in the given format
+    *
+    * Examples :
+    * {@code ImageCharts chart = new ImageCharts().chd(new double[]{10, 20, 30}, ChartDataFormat.TEXT);}
+    *
+    * @param values - single series. NaN is a missing value
+    * @param format - a:, t:, s:, e: or the shortest lossless one
+    * @return {ImageCharts}
+    * @see <a href="https://documentation.image-charts.com/reference/data-format/">Reference documentation</a>
+    */
+    public ImageCharts chd(double[] values, ChartDataFormat format) {
+        return this.chd(new double[][]{values}, format);
+    }
+
+    /**
+    * chart data, encoded with exact values (a:)
+    *
+    * Examples :
+    * {@code ImageCharts chart = new ImageCharts().chd(new int[]{10, 20, 30});}
+    *
+    * @param values - single series
+    * @return {ImageCharts}
+    * @see <a href="https://documentation.image-charts.com/reference/data-format/">Reference documentation</a>
+    */
+    public ImageCharts chd(int[] values) {
+        return this.chd(values, ChartDataFormat.AWESOME);
+    }
+
+    /**
+    * chart data, encoded in the given format
+    *
+    * @param values - single series
+    * @param format - a:, t:, s:, e: or the shortest lossless one
+    * @return {ImageCharts}
+    * @see <a href="https://documentation.image-charts.com/reference/data-format/">Reference documentation</a>
+    */
+    public ImageCharts chd(int[] values, ChartDataFormat format) {
+        return this.clone("chd", ChartDataEncoder.encode(values, format));
+    }
+
+    /**
+    * chart data with several series, encoded with exact values (a:)
+    *
+    * Examples :
+    * {@code ImageCharts chart = new ImageCharts().chd(new double[][]{{10, 20, 30}, {15, 25, 35}});}
+    *
+    * @param series - one array per series. NaN is a missing value
+    * @return {ImageCharts}
+    * @see <a href="https://documentation.image-charts.com/reference/data-format/">Reference documentation</a>
+    */
+    public ImageCharts chd(double[][] series) {
+        return this.chd(series, ChartDataFormat.AWESOME);
+    }
+
+    /**
+    * chart data with several series, encoded in the given format
+    *
+    * @param series - one array per series. NaN is a missing value
+    * @param format - a:, t:, s:, e: or the shortest lossless one
+    * @return {ImageCharts}
+    * @see <a href="https://documentation.image-charts.com/reference/data-format/">Reference documentation</a>
+    */
+    public ImageCharts chd(double[][] series, ChartDataFormat format) {
+        return this.clone("chd", ChartDataEncoder.encode(series, format));
+    }
+
+    /**
+    * chart data, downsampled then encoded in the given format
+    *
+    * Examples :
+    * {@code ImageCharts chart = new ImageCharts().chs("700x300").chd(values, ChartDataFormat.AUTO, Downsampling.lttb());}
+    *
+    * @param values - single series. NaN is a missing value
+    * @param format - a:, t:, s:, e: or the shortest lossless one
+    * @param downsampling - reduction applied to the series, to the chart width when chs is defined before chd
+    * @return {ImageCharts}
+    * @see <a href="https://documentation.image-charts.com/reference/data-format/">Reference documentation</a>
+    */
+    public ImageCharts chd(double[] values, ChartDataFormat format, Downsampling downsampling) {
+        return this.chd(new double[][]{values}, format, downsampling);
+    }
+
+    /**
+    * chart data with several series, downsampled (in parallel for long series) then encoded in the given format
+    *
+    * @param series - one array per series. NaN is a missing value
+    * @param format - a:, t:, s:, e: or the shortest lossless one
+    * @param downsampling - reduction applied to each series, to the chart width when chs is defined before chd
+    * @return {ImageCharts}
+    * @see <a href="https://documentation.image-charts.com/reference/data-format/">Reference documentation</a>
+    */
+    public ImageCharts chd(double[][] series, ChartDataFormat format, Downsampling downsampling) {
+        return this.chd(downsampling.apply(series, this.getChartWidth()), format);
+    }
     
     /**
     * You can configure some charts to scale automatically to fit their data with chds=a. The chart will be scaled so that the largest value is at the top of the chart and the smallest (or zero, if all values are greater than zero) will be at the bottom. Otherwise the &#34;&amp;lg;series_1_min&amp;gt;,&amp;lg;series_1_max&amp;gt;,...,&amp;lg;series_n_min&amp;gt;,&amp;lg;series_n_max&amp;gt;&#34; format set one or more minimum and maximum permitted values for each data series, separated by commas. You must supply both a max and a min. If you supply fewer pairs than there are data series, the last pair is applied to all remaining data series. Note that this does not change the axis range; to change the axis range, you must set the chxr parameter. Valid values range from (+/-)9.999e(+/-)199. You can specify values in either standard or E notation.
@@ -650,30 +805,22 @@ public class ImageCharts {
      * @throws InvalidKeyException InvalidKeyException
      */
     public String toURL() throws MalformedURLException, UnsupportedEncodingException, NoSuchAlgorithmException, InvalidKeyException {
-        StringBuilder queryParams = new StringBuilder();
-        final Iterator<Map.Entry<String, Object>> it = this.query.entrySet().iterator();
-        while (it.hasNext()) {
-            final Map.Entry<String, Object> entry = it.next();
-            final String key = entry.getKey();
-            queryParams.append(key);
-            queryParams.append('=');
-
-            final Object value = entry.getValue();
-            final String valueAsString = value != null ? URLEncoder.encode(value.toString(), DEFAULT_ENCODING) : "";
-            queryParams.append(valueAsString);
-
-            if (it.hasNext()) {
-                queryParams.append('&');
-            }
+        StringBuilder url = UrlEncoding.appendOrigin(new StringBuilder(64 + 32 * this.query.size()), this.protocol, this.host, this.port, this.pathname);
+        int queryStart = url.length();
+
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : this.query.entrySet()) {
+            if (!first) url.append('&');
+            first = false;
+            url.append(entry.getKey()).append('=');
+            UrlEncoding.appendEncoded(url, entry.getValue());
         }
 
         if (query.containsKey("icac") && this.secret != null && this.secret.length() > 0) {
-            queryParams.append("&ichm=" + sign(secret, queryParams.toString()));
+            int queryEnd = url.length();
+            UrlSigner.appendSignature(url.append("&ichm="), queryStart, queryEnd, this.secret);
         }
 
-        URL url = new URL(this.protocol, this.host, this.port, this.pathname + "?" + queryParams.toString());
-
-
         return url.toString();
     }
 
@@ -686,40 +833,112 @@ public class ImageCharts {
      * @throws NoSuchAlgorithmException NoSuchAlgorithmException
      */
     public BufferedImage toBuffer() throws IOException, InvalidKeyException, NoSuchAlgorithmException {
-      HttpGet request = new HttpGet(this.toURL());
-      String userAccount = this.query.containsKey("icac") ? " (" + this.query.get("icac") + ")" : "";
-      request.setHeader("User-Agent", "java-image-charts/1.0.1" + userAccount);
-      RequestConfig config = RequestConfig.custom()
-        .setConnectionRequestTimeout(this.timeout)
-        .setSocketTimeout(this.timeout)
-        .build();
-      request.setConfig(config);
-  
-      HttpClient httpClient = HttpClientBuilder.create().setConnectionTimeToLive(this.timeout, TimeUnit.MILLISECONDS).build();
-      HttpResponse httpResponse = httpClient.execute(request);
-  
-      int status = httpResponse.getStatusLine().getStatusCode();
-  
-      if (status >= 200 && status < 300) {
-        return ImageIO.read(httpResponse.getEntity().getContent());
+      ChartResponse response = this.execute();
+      try {
+        return this.decode(response);
+      } catch (IOException e) {
+        this.reportError(e, response.getTrace());
+        throw e;
+      } finally {
+        response.close();
       }
-  
-      String validationMessage = httpResponse.getLastHeader("x-ic-error-validation").getValue();
-      String validationCode = httpResponse.getLastHeader("x-ic-error-code").getValue();
-      String message = "";
-  
-      if (validationMessage != null && !validationMessage.isEmpty()) {
-        JSONArray json = new JSONArray(new JSONTokener(validationMessage));
-        JSONArray messageArray = new JSONArray();
-        for (Object x : json) {
-          messageArray.put(((JSONObject) x).getString("message"));
-        }
-        message = messageArray.join("\n");
+    }
+
+    private BufferedImage decode(ChartResponse response) throws IOException {
+      ChartMetrics metrics = this.client.getMetrics();
+      ChartTrace trace = response.getTrace();
+      if (metrics == ChartMetrics.NOOP && trace == null) return ImageIO.read(response.getBody());
+      long start = System.nanoTime();
+      BufferedImage decoded = ImageIO.read(response.getBody());
+      long elapsed = System.nanoTime() - start;
+      metrics.onTiming(ChartPhase.DECODE, elapsed);
+      if (trace != null) trace.decodeNanos = elapsed;
+      return decoded;
+    }
+
+    /**
+     * Report a failed render to the client metrics listener and to its flight recorder trace
+     *
+     * @param trace  trace of the failed render, or null
+     */
+    private void reportError(Throwable error, ChartTrace trace) {
+      if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+      if (trace != null) trace.fail(error);
+      ChartMetrics metrics = this.client.getMetrics();
+      if (metrics == ChartMetrics.NOOP) return;
+      if (error instanceof ImageChartsException) {
+        ImageChartsException apiError = (ImageChartsException) error;
+        metrics.onError(apiError.getStatusCode(), apiError.getErrorCode());
+      } else {
+        metrics.onError(0, error.getClass().getSimpleName());
+      }
+    }
+
+    /**
+     * Send the chart request through the client, the returned response is always successful and must be closed
+     */
+    private ChartResponse execute() throws IOException, InvalidKeyException, NoSuchAlgorithmException {
+      ChartRequest request = this.newRequest();
+      ChartTrace trace = request.getTrace();
+      ChartResponse response;
+      try {
+        response = this.client.execute(request);
+      } catch (IOException e) {
+        this.reportError(e, trace);
+        if (trace != null) trace.commit();
+        throw e;
+      } catch (ImageChartsException e) {
+        // rejected by the client (circuit breaker, concurrency limit...)
+        this.reportError(e, trace);
+        if (trace != null) trace.commit();
+        throw e;
+      }
+
+      if (response.isSuccessful()) {
+        response.setTrace(trace);
+        return response;
+      }
+
+      try {
+        ImageChartsException error = response.toException();
+        this.reportError(error, trace);
+        throw error;
+      } finally {
+        response.close();
+        if (trace != null) trace.commit();
+      }
+    }
+
+    private ChartRequest newRequest() throws IOException, InvalidKeyException, NoSuchAlgorithmException {
+      String account = this.query.containsKey("icac") ? String.valueOf(this.query.get("icac")) : null;
+      ChartMetrics metrics = this.client.getMetrics();
+      ChartTrace trace = ChartEvents.begin();
+      if (metrics == ChartMetrics.NOOP && trace == null) return new ChartRequest(this.toURL(), account, this.timeout);
+
+      long start = System.nanoTime();
+      String url = this.toURL();
+      metrics.onTiming(ChartPhase.URL, System.nanoTime() - start);
+      if (trace != null) {
+        Object cht = this.query.get("cht");
+        trace.chartType = cht != null ? cht.toString() : null;
+        trace.url = url;
       }
-  
-      message = !message.isEmpty() ? message : validationCode;
-  
-      throw new ImageChartsException(message);
+      return new ChartRequest(url, account, this.timeout, trace);
+    }
+
+    /**
+     * @return {int} chart width in pixels defined by chs, 0 if undefined
+     */
+    private int getChartWidth() {
+        Object chs = this.query.get("chs");
+        if (chs == null) return 0;
+        String size = chs.toString();
+        int separator = size.indexOf('x');
+        try {
+            return separator > 0 ? Integer.parseInt(size.substring(0, separator).trim()) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
     private String getFileFormat(){
@@ -728,48 +947,305 @@ public class ImageCharts {
 
     /**
      * Do a request to Image-Charts API with current configuration and writes the content inside a file
+     *
+     * The image bytes are transferred to the file as returned by Image-Charts API, without being decoded
+     *
      * @param filePath file path
      * @throws IOException IOException
      * @throws InvalidKeyException InvalidKeyException
      * @throws NoSuchAlgorithmException NoSuchAlgorithmException
      */
     public void toFile(String filePath) throws IOException, InvalidKeyException, NoSuchAlgorithmException{
-        ImageIO.write(this.toBuffer(), this.getFileFormat(), new File(filePath));
+        ChartResponse response = this.execute();
+        try {
+            FileChannel file = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                // not FileChannel.transferFrom: it swallows read failures once some bytes were written
+                copy(Channels.newChannel(response.getBody()), file);
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            this.reportError(e, response.getTrace());
+            throw e;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Do a request to Image-Charts API with current configuration and yield the raw image bytes (PNG, or GIF if chan is defined)
+     *
+     * @return {byte[]} image bytes as returned by Image-Charts API
+     * @throws IOException IOException
+     * @throws InvalidKeyException InvalidKeyException
+     * @throws NoSuchAlgorithmException NoSuchAlgorithmException
+     */
+    public byte[] toBytes() throws IOException, InvalidKeyException, NoSuchAlgorithmException {
+        ChartResponse response = this.execute();
+        try {
+            return response.readBody();
+        } catch (IOException e) {
+            this.reportError(e, response.getTrace());
+            throw e;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Do a request to Image-Charts API with current configuration and stream the raw image bytes to an output stream
+     *
+     * The output stream is flushed but not closed.
+     *
+     * @param out destination stream
+     * @return {long} number of bytes written
+     * @throws IOException IOException
+     * @throws InvalidKeyException InvalidKeyException
+     * @throws NoSuchAlgorithmException NoSuchAlgorithmException
+     */
+    public long writeTo(OutputStream out) throws IOException, InvalidKeyException, NoSuchAlgorithmException {
+        ChartResponse response = this.execute();
+        try {
+            InputStream body = response.getBody();
+            byte[] chunk = new byte[8192];
+            long written = 0;
+            int read;
+            while ((read = body.read(chunk)) != -1) {
+                out.write(chunk, 0, read);
+                written += read;
+            }
+            out.flush();
+            return written;
+        } catch (IOException e) {
+            this.reportError(e, response.getTrace());
+            throw e;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Do a request to Image-Charts API with current configuration and stream the raw image bytes to a channel
+     *
+     * The channel is not closed.
+     *
+     * @param channel destination channel
+     * @return {long} number of bytes written
+     * @throws IOException IOException
+     * @throws InvalidKeyException InvalidKeyException
+     * @throws NoSuchAlgorithmException NoSuchAlgorithmException
+     */
+    public long writeTo(WritableByteChannel channel) throws IOException, InvalidKeyException, NoSuchAlgorithmException {
+        ChartResponse response = this.execute();
+        try {
+            return copy(Channels.newChannel(response.getBody()), channel);
+        } catch (IOException e) {
+            this.reportError(e, response.getTrace());
+            throw e;
+        } finally {
+            response.close();
+        }
+    }
+
+    private static long copy(ReadableByteChannel body, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long written = 0;
+        while (body.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        return written;
     }
 
     /**
      * Do a request to Image-Charts API with current configuration and yield a promise of a base64 encoded [data URI](https://developer.mozilla.org/en-US/docs/Web/HTTP/Basics_of_HTTP/Data_URIs)
      *
+     * The image is encoded as returned by Image-Charts API, animated GIFs stay animated GIFs
+     *
      * @return {String} base64 data URI wrapped inside a promise
      * @throws IOException IOException
      * @throws NoSuchAlgorithmException NoSuchAlgorithmException
      * @throws InvalidKeyException InvalidKeyException
      */
     public String toDataURI() throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+        ChartResponse response = this.execute();
+        try {
+            long contentLength = response.getContentLength();
+            StringBuilder dataURI = new StringBuilder(contentLength > 0 ? (int) Math.min(Integer.MAX_VALUE - 64, 32 + Base64Appender.encodedLength(contentLength)) : 4096);
+            this.appendDataURI(response, dataURI);
+            return dataURI.toString();
+        } catch (IOException e) {
+            this.reportError(e, response.getTrace());
+            throw e;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Do a request to Image-Charts API with current configuration and stream a base64 encoded [data URI](https://developer.mozilla.org/en-US/docs/Web/HTTP/Basics_of_HTTP/Data_URIs)
+     * to an Appendable (a Writer, a StringBuilder...) while the image is downloaded, without buffering it
+     *
+     * The destination is neither flushed nor closed.
+     *
+     * @param out destination of the data URI
+     * @throws IOException IOException
+     * @throws NoSuchAlgorithmException NoSuchAlgorithmException
+     * @throws InvalidKeyException InvalidKeyException
+     */
+    public void toDataURI(Appendable out) throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+        ChartResponse response = this.execute();
+        try {
+            this.appendDataURI(response, out);
+        } catch (IOException e) {
+            this.reportError(e, response.getTrace());
+            throw e;
+        } finally {
+            response.close();
+        }
+    }
 
-        BufferedImage image = toBuffer();
-        String formatName = this.getFileFormat();
-        final ByteArrayOutputStream os = new ByteArrayOutputStream();
-        ImageIO.write(image, "png", os);
+    private void appendDataURI(ChartResponse response, Appendable out) throws IOException {
+        String contentType = response.getHeader("Content-Type");
+        if (contentType != null && contentType.startsWith("image/")) {
+            int parameters = contentType.indexOf(';');
+            contentType = (parameters != -1 ? contentType.substring(0, parameters) : contentType).trim();
+        } else {
+            contentType = "image/" + this.getFileFormat();
+        }
 
-        return "data:" + "image/" + formatName + ";base64," + new BASE64Encoder().encode(os.toByteArray());
+        out.append("data:").append(contentType).append(";base64,");
+        Base64Appender.encode(response.getBody(), out);
     }
 
-    private static String sign(String key, String data) throws NoSuchAlgorithmException, UnsupportedEncodingException, InvalidKeyException {
-        Mac sha256_HMAC = Mac.getInstance("HmacSHA256");
-        SecretKeySpec secret_key = new SecretKeySpec(key.getBytes("UTF-8"), "HmacSHA256");
-        sha256_HMAC.init(secret_key);
+    /**
+     * Do a non-blocking request to Image-Charts API with current configuration and yield the raw image bytes
+     *
+     * The request goes through the client's event-loop engine, no thread is blocked while it is in flight.
+     *
+     * @return {CompletableFuture} completed with the PNG or GIF bytes, or exceptionally with an ImageChartsException or IOException
+     */
+    public CompletableFuture<byte[]> toBytesAsync() {
+      return this.executeAsync().thenApply(new Function<ChartResponse, byte[]>() {
+        @Override
+        public byte[] apply(ChartResponse response) {
+          try {
+            return response.readBody();
+          } catch (IOException e) {
+            reportError(e, response.getTrace());
+            throw new CompletionException(e);
+          } finally {
+            closeQuietly(response);
+          }
+        }
+      });
+    }
 
-        return bytesToHex(sha256_HMAC.doFinal(data.getBytes("UTF-8")));
+    /**
+     * Do a non-blocking request to Image-Charts API with current configuration and yield a BufferedImage
+     *
+     * The image is decoded on the common fork-join pool, never on the client's event-loop threads.
+     *
+     * @return {CompletableFuture} completed with the decoded image, or exceptionally with an ImageChartsException or IOException
+     */
+    public CompletableFuture<BufferedImage> toBufferAsync() {
+      return this.executeAsync().thenApplyAsync(new Function<ChartResponse, BufferedImage>() {
+        @Override
+        public BufferedImage apply(ChartResponse response) {
+          try {
+            return decode(response);
+          } catch (IOException e) {
+            reportError(e, response.getTrace());
+            throw new CompletionException(e);
+          } finally {
+            closeQuietly(response);
+          }
+        }
+      });
     }
 
-    private static String bytesToHex(byte[] hash) {
-        StringBuffer hexString = new StringBuffer();
-        for (int i = 0; i < hash.length; i++) {
-            String hex = Integer.toHexString(0xff & hash[i]);
-            if (hex.length() == 1) hexString.append('0');
-            hexString.append(hex);
+    /**
+     * Do a non-blocking request to Image-Charts API with current configuration and stream the image inside a file
+     *
+     * @param filePath file path
+     * @return {CompletableFuture} completed once the file is written, or exceptionally with an ImageChartsException or IOException
+     */
+    public CompletableFuture<Void> toFileAsync(String filePath) {
+      ChartRequest request;
+      try {
+        request = this.newRequest();
+      } catch (Exception e) {
+        return failedFuture(e);
+      }
+      final ChartTrace trace = request.getTrace();
+      CompletableFuture<File> written = this.reportErrors(this.client.executeAsync(request, new File(filePath)), trace);
+      if (trace != null) {
+        written = written.whenComplete(new BiConsumer<File, Throwable>() {
+          @Override
+          public void accept(File file, Throwable error) {
+            trace.commit();
+          }
+        });
+      }
+      return written.thenApply(new Function<File, Void>() {
+        @Override
+        public Void apply(File file) {
+          return null;
         }
-        return hexString.toString();
+      });
+    }
+
+    private CompletableFuture<ChartResponse> executeAsync() {
+      ChartRequest request;
+      try {
+        request = this.newRequest();
+      } catch (Exception e) {
+        return failedFuture(e);
+      }
+      final ChartTrace trace = request.getTrace();
+      CompletableFuture<ChartResponse> response = this.reportErrors(this.client.executeAsync(request).thenApply(new Function<ChartResponse, ChartResponse>() {
+        @Override
+        public ChartResponse apply(ChartResponse response) {
+          if (!response.isSuccessful()) throw response.toException();
+          response.setTrace(trace);
+          return response;
+        }
+      }), trace);
+      if (trace == null) return response;
+      // successful renders are committed once their response is closed
+      return response.whenComplete(new BiConsumer<ChartResponse, Throwable>() {
+        @Override
+        public void accept(ChartResponse result, Throwable error) {
+          if (error != null) trace.commit();
+        }
+      });
+    }
+
+    private <T> CompletableFuture<T> reportErrors(CompletableFuture<T> future, final ChartTrace trace) {
+      if (this.client.getMetrics() == ChartMetrics.NOOP && trace == null) return future;
+      return future.whenComplete(new BiConsumer<T, Throwable>() {
+        @Override
+        public void accept(T result, Throwable error) {
+          if (error != null) reportError(error, trace);
+        }
+      });
+    }
+
+    private static void closeQuietly(ChartResponse response) {
+      try {
+        response.close();
+      } catch (IOException e) {
+        // buffered response, never thrown
+      }
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable error) {
+      CompletableFuture<T> future = new CompletableFuture<T>();
+      future.completeExceptionally(error);
+      return future;
     }
 }
@@ -0,0 +1,1479 @@
+package com.image.charts;
+
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.client.methods.ZeroCopyConsumer;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Long-lived, thread-safe HTTP client used by {@link ImageCharts} to render charts.
+ *
+ * It owns a pool of keep-alive connections so consecutive renders reuse TCP and TLS sessions.
+ * Build it once, share it between every {@link ImageCharts} instance and {@link #close()} it on shutdown.
+ *
+ * Asynchronous renders ({@link ImageCharts#toBufferAsync()} and friends) go through a separate non-blocking engine,
+ * started on first use, whose few I/O threads multiplex every in-flight request.
+ *
+ * {@code ImageChartsClient client = ImageChartsClient.builder().maxConnectionsPerRoute(50).build();}
+ * {@code new ImageCharts(client).cht("p").chd("t:1,2,3").chs("100x100").toBuffer();}
+ */
+public class ImageChartsClient implements Closeable {
+    private final CloseableHttpClient httpClient;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final Builder config;
+    private final ConnectionKeepAliveStrategy keepAliveStrategy;
+    private final List<ChartCache> caches;
+    private final boolean singleFlight;
+    private final boolean httpCaching;
+    private final int postThreshold;
+    private final ChartMetrics metrics;
+    private final RetryPolicy retryPolicy;
+    private final HedgingPolicy hedgingPolicy;
+    private final ConcurrencyLimit concurrencyLimit;
+    private final CircuitBreaker circuitBreaker;
+    private final RateLimiter rateLimiter;
+    private final LoadBalancer loadBalancer;
+    private final Http2Transport http2;
+    private final ConcurrentHashMap<String, CompletableFuture<ChartResponse>> inFlight = new ConcurrentHashMap<String, CompletableFuture<ChartResponse>>();
+    private final AtomicLong coalesced = new AtomicLong();
+    private volatile CloseableHttpAsyncClient asyncClient;
+    private PoolingNHttpClientConnectionManager asyncConnectionManager;
+    private ScheduledExecutorService asyncScheduler;
+    private boolean closed;
+
+    private ImageChartsClient(Builder builder) {
+        this.config = builder;
+        this.caches = new ArrayList<ChartCache>(builder.caches);
+        this.singleFlight = builder.singleFlight;
+        this.httpCaching = builder.httpCaching;
+        this.postThreshold = builder.postThreshold;
+        this.metrics = builder.metrics;
+        this.retryPolicy = builder.retryPolicy;
+        this.hedgingPolicy = builder.hedgingPolicy;
+        this.concurrencyLimit = builder.concurrencyLimit;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.rateLimiter = builder.rateLimiter;
+        this.loadBalancer = builder.loadBalancer;
+        this.http2 = builder.http2 ? new Http2Transport(builder.postThreshold) : null;
+        if (this.httpCaching && this.caches.isEmpty()) this.caches.add(MemoryChartCache.builder().build());
+        final ChartMetrics metrics = builder.metrics;
+        this.connectionManager = new PoolingHttpClientConnectionManager(builder.connectionTimeToLive, TimeUnit.MILLISECONDS) {
+            @Override
+            public void connect(HttpClientConnection connection, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+                ChartTrace trace = ChartTrace.of(context);
+                if (metrics == ChartMetrics.NOOP && trace == null) {
+                    super.connect(connection, route, connectTimeout, context);
+                    return;
+                }
+                long start = System.nanoTime();
+                super.connect(connection, route, connectTimeout, context);
+                long elapsed = System.nanoTime() - start;
+                metrics.onTiming(ChartPhase.CONNECT, elapsed);
+                if (trace != null) trace.connectNanos += elapsed;
+            }
+        };
+        this.connectionManager.setMaxTotal(builder.maxConnections);
+        this.connectionManager.setDefaultMaxPerRoute(builder.maxConnectionsPerRoute);
+        this.connectionManager.setValidateAfterInactivity(builder.validateAfterInactivity);
+
+        final long keepAlive = builder.keepAlive;
+        this.keepAliveStrategy = new ConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+            }
+        };
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(this.connectionManager)
+            .setKeepAliveStrategy(this.keepAliveStrategy)
+            .evictExpiredConnections()
+            .evictIdleConnections(builder.idleTimeout, TimeUnit.MILLISECONDS)
+            .disableCookieManagement()
+            .setRequestExecutor(new HttpRequestExecutor() {
+                @Override
+                public HttpResponse execute(HttpRequest request, HttpClientConnection connection, HttpContext context) throws IOException, HttpException {
+                    ChartTrace trace = ChartTrace.of(context);
+                    if (metrics == ChartMetrics.NOOP && trace == null) return super.execute(request, connection, context);
+                    long start = System.nanoTime();
+                    HttpResponse response = super.execute(request, connection, context);
+                    long elapsed = System.nanoTime() - start;
+                    metrics.onTiming(ChartPhase.FIRST_BYTE, elapsed);
+                    if (trace != null) trace.waitNanos += elapsed;
+                    return response;
+                }
+            })
+            .build();
+        if (this.loadBalancer != null) this.loadBalancer.start();
+    }
+
+    /**
+     * @return {Builder} a new client builder initialized with default settings
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Process-wide client used by {@link ImageCharts} instances that were not given one explicitly
+     *
+     * @return {ImageChartsClient} shared default client
+     */
+    public static ImageChartsClient getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * @return {int} number of pooled connections currently leased by in-flight requests
+     */
+    public int getLeasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    /**
+     * @return {int} number of pooled connections currently idle and available for reuse
+     */
+    public int getAvailableConnections() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    /**
+     * @return {long} number of requests attached to an identical in-flight request instead of calling Image-Charts API
+     */
+    public long getCoalescedRequests() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return {ChartMetrics} the configured metrics listener, {@link ChartMetrics#NOOP} by default
+     */
+    ChartMetrics getMetrics() {
+        return metrics;
+    }
+
+    ChartResponse execute(ChartRequest chartRequest) throws IOException {
+        CachedChart cached = caches.isEmpty() ? null : lookup(chartRequest.getUrl());
+        if (cached != null && (!httpCaching || HttpCachePolicy.isFresh(cached, System.currentTimeMillis()))) {
+            traceHit(chartRequest, cached, false);
+            return new ChartResponse(cached);
+        }
+
+        ChartRequest conditional = cached != null ? HttpCachePolicy.revalidate(chartRequest, cached) : null;
+        if (conditional == null) cached = null;
+        else chartRequest = conditional;
+
+        return singleFlight ? coalesce(chartRequest, cached) : fetch(chartRequest, cached);
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #execute(ChartRequest)}, cache hits complete immediately
+     */
+    CompletableFuture<ChartResponse> executeAsync(ChartRequest chartRequest) {
+        CachedChart cached = caches.isEmpty() ? null : lookup(chartRequest.getUrl());
+        if (cached != null && (!httpCaching || HttpCachePolicy.isFresh(cached, System.currentTimeMillis()))) {
+            traceHit(chartRequest, cached, false);
+            return CompletableFuture.completedFuture(new ChartResponse(cached));
+        }
+
+        ChartRequest conditional = cached != null ? HttpCachePolicy.revalidate(chartRequest, cached) : null;
+        if (conditional == null) cached = null;
+        else chartRequest = conditional;
+
+        return singleFlight ? coalesceAsync(chartRequest, cached) : fetchAsync(chartRequest, cached);
+    }
+
+    /**
+     * Call Image-Charts API and store successful responses in the caches
+     *
+     * @param stale  cached chart the request revalidates, or null
+     */
+    private ChartResponse fetch(ChartRequest chartRequest, CachedChart stale) throws IOException {
+        ChartResponse response = send(chartRequest);
+        if (stale != null && response.getStatus() == 304) {
+            response.close();
+            CachedChart refreshed = HttpCachePolicy.refresh(stale, response, System.currentTimeMillis());
+            store(chartRequest.getUrl(), refreshed);
+            traceHit(chartRequest, refreshed, true);
+            return new ChartResponse(refreshed);
+        }
+        if (caches.isEmpty() || !response.isSuccessful() || (httpCaching && !HttpCachePolicy.isStorable(response))) {
+            return response;
+        }
+
+        byte[] body;
+        try {
+            body = response.readBody();
+        } finally {
+            response.close();
+        }
+        store(chartRequest.getUrl(), response, body);
+        return new ChartResponse(response.getStatus(), response.getHeaders(), body);
+    }
+
+    private CompletableFuture<ChartResponse> fetchAsync(final ChartRequest chartRequest, final CachedChart stale) {
+        CompletableFuture<ChartResponse> result = sendAsync(chartRequest);
+        if (caches.isEmpty()) return result;
+
+        if (stale != null) {
+            result = result.thenApply(new Function<ChartResponse, ChartResponse>() {
+                @Override
+                public ChartResponse apply(ChartResponse response) {
+                    if (response.getStatus() != 304) return response;
+                    CachedChart refreshed = HttpCachePolicy.refresh(stale, response, System.currentTimeMillis());
+                    store(chartRequest.getUrl(), refreshed);
+                    traceHit(chartRequest, refreshed, true);
+                    return new ChartResponse(refreshed);
+                }
+            });
+        }
+
+        // populate the caches off the I/O threads without delaying the caller
+        result.thenAcceptAsync(new Consumer<ChartResponse>() {
+            @Override
+            public void accept(ChartResponse response) {
+                if (response.isSuccessful() && response.getStatus() != 304 && (!httpCaching || HttpCachePolicy.isStorable(response))) {
+                    try {
+                        store(chartRequest.getUrl(), response, response.readBody());
+                    } catch (IOException e) {
+                        // buffered body, never thrown
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Attach the caller to an identical in-flight request if any, otherwise fetch and share the buffered response
+     */
+    private ChartResponse coalesce(ChartRequest chartRequest, CachedChart stale) throws IOException {
+        String key = chartRequest.getUrl();
+        CompletableFuture<ChartResponse> flight = new CompletableFuture<ChartResponse>();
+        CompletableFuture<ChartResponse> leader = inFlight.putIfAbsent(key, flight);
+
+        if (leader != null) {
+            coalesced.incrementAndGet();
+            try {
+                // the follower waits no longer than its own request would, whatever the timeout of the leader
+                int timeout = chartRequest.getTimeout();
+                return copyOf(timeout > 0 ? leader.get(timeout, TimeUnit.MILLISECONDS) : leader.get());
+            } catch (TimeoutException e) {
+                throw new SocketTimeoutException("Read timed out while waiting for an identical in-flight chart request");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for an identical in-flight chart request");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException(cause);
+            }
+        }
+
+        try {
+            ChartResponse response = fetch(chartRequest, stale);
+            byte[] body;
+            try {
+                body = response.readBody();
+            } finally {
+                response.close();
+            }
+            ChartResponse shared = new ChartResponse(response.getStatus(), response.getHeaders(), body);
+            flight.complete(shared);
+            return copyOf(shared);
+        } catch (IOException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private CompletableFuture<ChartResponse> coalesceAsync(ChartRequest chartRequest, CachedChart stale) {
+        final String key = chartRequest.getUrl();
+        final CompletableFuture<ChartResponse> flight = new CompletableFuture<ChartResponse>();
+        CompletableFuture<ChartResponse> leader = inFlight.putIfAbsent(key, flight);
+
+        if (leader != null) {
+            coalesced.incrementAndGet();
+        } else {
+            leader = flight;
+            fetchAsync(chartRequest, stale).whenComplete(new BiConsumer<ChartResponse, Throwable>() {
+                @Override
+                public void accept(ChartResponse response, Throwable error) {
+                    inFlight.remove(key, flight);
+                    if (error != null) {
+                        flight.completeExceptionally(error);
+                    } else {
+                        flight.complete(response);
+                    }
+                }
+            });
+        }
+
+        return leader.thenApply(new Function<ChartResponse, ChartResponse>() {
+            @Override
+            public ChartResponse apply(ChartResponse shared) {
+                return copyOf(shared);
+            }
+        });
+    }
+
+    /**
+     * @return {ChartResponse} a response with its own body stream over a buffered response bytes
+     */
+    private static ChartResponse copyOf(ChartResponse shared) {
+        try {
+            return new ChartResponse(shared.getStatus(), shared.getHeaders(), shared.readBody());
+        } catch (IOException e) {
+            // buffered body, never thrown
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Record a chart served from the caches in the flight recording
+     */
+    private static void traceHit(ChartRequest chartRequest, CachedChart chart, boolean revalidated) {
+        ChartEvents.cacheHit(chartRequest.getUrl(), chart.getSize(), revalidated);
+        ChartTrace trace = chartRequest.getTrace();
+        if (trace != null) trace.cacheHit = true;
+    }
+
+    /**
+     * Send the request, retrying transient failures as allowed by the retry policy
+     */
+    private ChartResponse send(ChartRequest chartRequest) throws IOException {
+        if (hedgingPolicy.isEnabled()) return await(sendAsync(chartRequest));
+        retryPolicy.onRequest();
+        for (int attempt = 1; ; attempt++) {
+            ChartResponse response;
+            try {
+                response = sendOnce(chartRequest);
+            } catch (IOException e) {
+                if (!retryPolicy.isRetryable(e) || !retryPolicy.tryRetry(attempt)) throw e;
+                metrics.onRetry(0, e.getClass().getSimpleName());
+                pause(TimeUnit.MILLISECONDS.toNanos(retryPolicy.backoff(attempt, null)));
+                continue;
+            }
+            int status = response.getStatus();
+            if (!retryPolicy.isRetryable(status) || !retryPolicy.tryRetry(attempt)) return response;
+
+            String retryAfter = response.getHeader("Retry-After");
+            metrics.onRetry(status, response.getHeader("x-ic-error-code"));
+            response.close();
+            pause(TimeUnit.MILLISECONDS.toNanos(retryPolicy.backoff(attempt, retryAfter)));
+        }
+    }
+
+    /**
+     * Pass the circuit breaker and the concurrency limit, the request must then be released by {@link #release}. The
+     * rate limiter permit the request holds is given back when it is rejected.
+     *
+     * @return {Admission} admission time and circuit breaker permit
+     * @throws ImageChartsException IC_CIRCUIT_OPEN or IC_CONCURRENCY_LIMIT when the request is rejected
+     */
+    private Admission admit(ChartRequest chartRequest) {
+        if (circuitBreaker == null && concurrencyLimit == null) return Admission.NONE;
+        CircuitBreaker.Permit permit = null;
+        if (circuitBreaker != null) {
+            permit = circuitBreaker.tryAcquire();
+            if (permit == null) {
+                if (rateLimiter != null) rateLimiter.refund(chartRequest.getAccount());
+                throw new ImageChartsException("Image-Charts API is unhealthy, circuit breaker is open", 0, "IC_CIRCUIT_OPEN");
+            }
+        }
+        if (concurrencyLimit != null && !concurrencyLimit.tryAcquire()) {
+            if (permit != null) circuitBreaker.onIgnored(permit);
+            if (rateLimiter != null) rateLimiter.refund(chartRequest.getAccount());
+            throw new ImageChartsException("Too many chart requests in flight, concurrency limit is " + concurrencyLimit.getLimit(), 0, "IC_CONCURRENCY_LIMIT");
+        }
+        return new Admission(System.nanoTime(), permit);
+    }
+
+    /**
+     * @return {LoadBalancer.Endpoint} the endpoint the request is sent to, to be released by {@link #release}, or null without load balancer
+     */
+    private LoadBalancer.Endpoint route() {
+        return loadBalancer != null ? loadBalancer.acquire() : null;
+    }
+
+    /**
+     * Feed the outcome of an admitted request to the circuit breaker, the concurrency limit and the load balancer
+     *
+     * @param endpoint  endpoint the request was sent to, or null
+     * @param status  HTTP status code, ignored when error is not null
+     * @param error  failure of the request, or null
+     */
+    private void release(Admission admission, LoadBalancer.Endpoint endpoint, int status, Throwable error) {
+        if (circuitBreaker == null && concurrencyLimit == null && endpoint == null) return;
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        if (error instanceof ImageChartsException) {
+            status = ((ImageChartsException) error).getStatusCode();
+            error = null;
+        }
+
+        boolean ignored = error instanceof CancellationException
+            || (error instanceof InterruptedIOException && !(error instanceof SocketTimeoutException) && !(error instanceof ConnectTimeoutException));
+        boolean failed = error != null || status == 429 || status >= 500;
+        CircuitBreaker.Permit permit = admission.permit;
+        if (permit != null) {
+            if (ignored) circuitBreaker.onIgnored(permit);
+            else if (failed) circuitBreaker.onFailure(permit);
+            else circuitBreaker.onSuccess(permit);
+        }
+        if (concurrencyLimit != null) {
+            if (ignored) concurrencyLimit.onIgnored();
+            else if (failed) concurrencyLimit.onDropped();
+            else concurrencyLimit.onSuccess(System.nanoTime() - admission.start);
+        }
+        if (endpoint != null) {
+            // a slow or throttling node is not unhealthy, only errors and 5xx responses count
+            if (ignored) endpoint.onIgnored();
+            else if (error != null || status >= 500) endpoint.onFailure();
+            else endpoint.onSuccess();
+        }
+    }
+
+    private <T> void releasing(CompletableFuture<T> result, final Admission admission, final LoadBalancer.Endpoint endpoint) {
+        if (circuitBreaker == null && concurrencyLimit == null && endpoint == null) return;
+        result.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable error) {
+                release(admission, endpoint, value instanceof ChartResponse ? ((ChartResponse) value).getStatus() : 200, error);
+            }
+        });
+    }
+
+    /**
+     * Block until the non-blocking request completes
+     */
+    private static ChartResponse await(CompletableFuture<ChartResponse> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a chart request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private static void pause(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a chart request");
+        }
+    }
+
+    /**
+     * Pause the account of a request throttled by Image-Charts API
+     */
+    private void throttled(ChartRequest chartRequest, int status, String retryAfter) {
+        if (status == 429 && rateLimiter != null) rateLimiter.onThrottled(chartRequest.getAccount(), retryAfter);
+    }
+
+    /**
+     * Send a single attempt. A response is released once closed, so that its body download counts in the latency sample
+     * of the concurrency limit and holds its permit.
+     */
+    private ChartResponse sendOnce(ChartRequest chartRequest) throws IOException {
+        ChartTrace trace = chartRequest.getTrace();
+        HttpContext context = null;
+        if (trace != null) {
+            context = new BasicHttpContext();
+            context.setAttribute(ChartTrace.ATTRIBUTE, trace);
+        }
+        if (rateLimiter != null) pause(rateLimiter.reserve(chartRequest.getAccount()));
+        final Admission admission = admit(chartRequest);
+        final LoadBalancer.Endpoint endpoint = route();
+        ChartResponse response;
+        try {
+            response = http2 != null ? sendHttp2(chartRequest, endpoint) : sendHttp1(chartRequest, endpoint, context);
+        } catch (IOException e) {
+            release(admission, endpoint, 0, e);
+            throw e;
+        } catch (RuntimeException e) {
+            release(admission, endpoint, 0, e);
+            throw e;
+        }
+        final int status = response.getStatus();
+        response.setOnClose(new Runnable() {
+            @Override
+            public void run() {
+                release(admission, endpoint, status, null);
+            }
+        });
+        if (status == 429) throttled(chartRequest, status, response.getHeader("Retry-After"));
+        return response;
+    }
+
+    private ChartResponse sendHttp1(ChartRequest chartRequest, LoadBalancer.Endpoint endpoint, HttpContext context) throws IOException {
+        CloseableHttpResponse httpResponse = httpClient.execute(newRequest(chartRequest, endpoint), context);
+        int status = httpResponse.getStatusLine().getStatusCode();
+        HttpEntity entity = httpResponse.getEntity();
+        InputStream body = entity != null ? entity.getContent() : null;
+        long contentLength = entity != null ? entity.getContentLength() : -1;
+        return new ChartResponse(status, headersOf(httpResponse), metered(body, chartRequest.getTrace(), status), contentLength, httpResponse);
+    }
+
+    /**
+     * The JDK client opens its connections itself, so their setup time is part of FIRST_BYTE here
+     */
+    private ChartResponse sendHttp2(ChartRequest chartRequest, LoadBalancer.Endpoint endpoint) throws IOException {
+        ChartTrace trace = chartRequest.getTrace();
+        long start = System.nanoTime();
+        ChartResponse response = http2.send(chartRequest, urlOf(chartRequest, endpoint));
+        if (metrics == ChartMetrics.NOOP && trace == null) return response;
+
+        long elapsed = System.nanoTime() - start;
+        metrics.onTiming(ChartPhase.FIRST_BYTE, elapsed);
+        if (trace != null) trace.waitNanos += elapsed;
+        int status = response.getStatus();
+        return new ChartResponse(status, response.getHeaders(), metered(response.getBody(), trace, status), response.getContentLength(), null);
+    }
+
+    /**
+     * @return {InputStream} the response body, reporting the download to the metrics listener and the trace
+     */
+    private InputStream metered(InputStream body, ChartTrace trace, int status) {
+        if (trace != null) trace.status = status;
+        if (metrics == ChartMetrics.NOOP && trace == null) return body;
+        if (body != null) return new MeteredInputStream(body, metrics, trace, status);
+        metrics.onResponse(status, 0);
+        return null;
+    }
+
+    /**
+     * Send the request through the non-blocking engine, the response body is fully buffered once the future completes
+     */
+    private CompletableFuture<ChartResponse> sendAsync(final ChartRequest chartRequest) {
+        return retryAsync(chartRequest, new Attempt<ChartResponse>() {
+            @Override
+            public CompletableFuture<ChartResponse> send() {
+                if (hedgingPolicy.isEnabled()) return hedgeAsync(chartRequest);
+                return sendAsyncOnce(chartRequest, new MeteredConsumer(chartRequest.getTrace()));
+            }
+        });
+    }
+
+    /**
+     * Send the request, then a duplicate if no response started within the hedging delay, the first response wins
+     */
+    private CompletableFuture<ChartResponse> hedgeAsync(final ChartRequest chartRequest) {
+        hedgingPolicy.onRequest();
+        final CompletableFuture<ChartResponse> result = new CompletableFuture<ChartResponse>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        final MeteredConsumer timings = new MeteredConsumer(chartRequest.getTrace());
+        race(sendAsyncOnce(chartRequest, timings), result, pending);
+
+        try {
+            scheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.isDone() || timings.hasResponded()) return;
+                    // a hedge never waits for the rate limiter, it is only worth sending right away
+                    if (rateLimiter != null && !rateLimiter.tryAcquire(chartRequest.getAccount())) return;
+                    if (!hedgingPolicy.tryHedge()) return;
+                    pending.incrementAndGet();
+                    metrics.onHedge();
+                    // the trace belongs to the first request, the hedge is only timed for the hedging delay
+                    race(sendAsyncOnce(chartRequest, new MeteredConsumer(null)), result, pending);
+                }
+            }, hedgingPolicy.getDelayNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // the client is closing, no hedge
+        } catch (IllegalStateException e) {
+            // the client is closed, no hedge
+        }
+        return result;
+    }
+
+    /**
+     * Complete the result with the first response of the racing requests, or with the last failure if they all fail
+     */
+    private static void race(final CompletableFuture<ChartResponse> sent, final CompletableFuture<ChartResponse> result, final AtomicInteger pending) {
+        result.whenComplete(new BiConsumer<ChartResponse, Throwable>() {
+            @Override
+            public void accept(ChartResponse response, Throwable error) {
+                // the winner is already done, this only cancels the loser
+                sent.cancel(false);
+            }
+        });
+        sent.whenComplete(new BiConsumer<ChartResponse, Throwable>() {
+            @Override
+            public void accept(ChartResponse response, Throwable error) {
+                if (error == null) {
+                    result.complete(response);
+                } else if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(error);
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<ChartResponse> sendAsyncOnce(ChartRequest chartRequest, final MeteredConsumer timings) {
+        final CompletableFuture<ChartResponse> result = new CompletableFuture<ChartResponse>();
+        final Future<HttpResponse> future;
+        final LoadBalancer.Endpoint endpoint;
+        try {
+            Admission admission = admit(chartRequest);
+            endpoint = route();
+            releasing(result, admission, endpoint);
+        } catch (ImageChartsException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (http2 != null) return sendHttp2Async(chartRequest, endpoint, null, timings, result);
+        try {
+            future = asyncClient().execute(
+                HttpAsyncMethods.create(newRequest(chartRequest, endpoint)),
+                new BasicAsyncResponseConsumer() {
+                    @Override
+                    protected void onResponseReceived(HttpResponse response) throws IOException {
+                        timings.onResponseReceived();
+                        super.onResponseReceived(response);
+                    }
+                },
+                new FutureCallback<HttpResponse>() {
+                    @Override
+                    public void completed(HttpResponse httpResponse) {
+                        try {
+                            HttpEntity entity = httpResponse.getEntity();
+                            byte[] body = entity != null ? EntityUtils.toByteArray(entity) : new byte[0];
+                            int status = httpResponse.getStatusLine().getStatusCode();
+                            timings.onCompleted(status, body.length);
+                            if (status == 429) throttled(chartRequest, status, headerOf(httpResponse, "Retry-After"));
+                            result.complete(new ChartResponse(httpResponse.getStatusLine().getStatusCode(), headersOf(httpResponse), body));
+                        } catch (IOException e) {
+                            result.completeExceptionally(e);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        result.completeExceptionally(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        result.cancel(false);
+                    }
+                });
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        return cancelling(result, future);
+    }
+
+    /**
+     * Send the request through the non-blocking engine and stream a successful response body straight to a file
+     */
+    CompletableFuture<File> executeAsync(final ChartRequest chartRequest, final File file) {
+        final CompletableFuture<File> result = new CompletableFuture<File>();
+
+        CachedChart cached = caches.isEmpty() ? null : lookup(chartRequest.getUrl());
+        if (cached != null && (!httpCaching || HttpCachePolicy.isFresh(cached, System.currentTimeMillis()))) {
+            traceHit(chartRequest, cached, false);
+            try {
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    ByteBuffer content = cached.getContent();
+                    while (content.hasRemaining()) {
+                        channel.write(content);
+                    }
+                } finally {
+                    channel.close();
+                }
+                result.complete(file);
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+
+        return retryAsync(chartRequest, new Attempt<File>() {
+            @Override
+            public CompletableFuture<File> send() {
+                return sendAsync(chartRequest, file);
+            }
+        });
+    }
+
+    private CompletableFuture<File> sendAsync(ChartRequest chartRequest, File file) {
+        final CompletableFuture<File> result = new CompletableFuture<File>();
+        final Future<File> future;
+        final MeteredConsumer timings = new MeteredConsumer(chartRequest.getTrace());
+        final LoadBalancer.Endpoint endpoint;
+        try {
+            Admission admission = admit(chartRequest);
+            endpoint = route();
+            releasing(result, admission, endpoint);
+        } catch (ImageChartsException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (http2 != null) return sendHttp2Async(chartRequest, endpoint, file, timings, result);
+        try {
+            future = asyncClient().execute(
+                HttpAsyncMethods.create(newRequest(chartRequest, endpoint)),
+                new ZeroCopyConsumer<File>(file) {
+                    @Override
+                    protected void onResponseReceived(HttpResponse response) {
+                        timings.onResponseReceived();
+                        super.onResponseReceived(response);
+                    }
+
+                    @Override
+                    protected File process(HttpResponse httpResponse, File file, ContentType contentType) {
+                        int status = httpResponse.getStatusLine().getStatusCode();
+                        timings.onCompleted(status, file.length());
+                        if (status == 429) throttled(chartRequest, status, headerOf(httpResponse, "Retry-After"));
+                        if (status >= 200 && status < 300) {
+                            return file;
+                        }
+                        file.delete();
+                        throw new ChartResponse(status, headersOf(httpResponse), null, -1, null).toException();
+                    }
+                },
+                new FutureCallback<File>() {
+                    @Override
+                    public void completed(File file) {
+                        result.complete(file);
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        result.completeExceptionally(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        result.cancel(false);
+                    }
+                });
+        } catch (FileNotFoundException e) {
+            result.completeExceptionally(e);
+            return result;
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        return cancelling(result, future);
+    }
+
+    /**
+     * Send the request through the HTTP/2 transport, completing the result with the buffered response, or with the file
+     * once a successful response body was written to it
+     *
+     * @param file  file the body is streamed to, or null to buffer it
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> sendHttp2Async(final ChartRequest chartRequest, LoadBalancer.Endpoint endpoint, final File file, final MeteredConsumer timings, final CompletableFuture<T> result) {
+        Runnable onResponseReceived = new Runnable() {
+            @Override
+            public void run() {
+                timings.onResponseReceived();
+            }
+        };
+        final CompletableFuture<ChartResponse> sent;
+        try {
+            String url = urlOf(chartRequest, endpoint);
+            sent = file != null ? http2.sendAsync(chartRequest, url, file, onResponseReceived) : http2.sendAsync(chartRequest, url, onResponseReceived);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        sent.whenComplete(new BiConsumer<ChartResponse, Throwable>() {
+            @Override
+            public void accept(ChartResponse response, Throwable error) {
+                if (error != null) {
+                    result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                    return;
+                }
+                int status = response.getStatus();
+                timings.onCompleted(status, response.getContentLength());
+                if (status == 429) throttled(chartRequest, status, response.getHeader("Retry-After"));
+                if (file == null) {
+                    result.complete((T) response);
+                } else if (response.isSuccessful()) {
+                    result.complete((T) file);
+                } else {
+                    file.delete();
+                    result.completeExceptionally(response.toException());
+                }
+            }
+        });
+        return cancelling(result, sent);
+    }
+
+    /**
+     * One attempt of a non-blocking request
+     */
+    private interface Attempt<T> {
+        CompletableFuture<T> send();
+    }
+
+    /**
+     * Run the attempt, then run it again after a backoff while it fails transiently and the retry policy allows it
+     */
+    private <T> CompletableFuture<T> retryAsync(ChartRequest chartRequest, Attempt<T> attempt) {
+        retryPolicy.onRequest();
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        retryAsync(chartRequest, attempt, 1, result);
+        return result;
+    }
+
+    /**
+     * Run the attempt once the rate limiter allows it, the wait is a timer so that no thread is blocked
+     */
+    private <T> void retryAsync(final ChartRequest chartRequest, final Attempt<T> attempt, final int count, final CompletableFuture<T> result) {
+        long wait;
+        try {
+            wait = rateLimiter != null ? rateLimiter.reserve(chartRequest.getAccount()) : 0;
+        } catch (ImageChartsException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        if (wait <= 0) {
+            sendAttempt(chartRequest, attempt, count, result);
+            return;
+        }
+        try {
+            scheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!result.isDone()) sendAttempt(chartRequest, attempt, count, result);
+                }
+            }, wait, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new IllegalStateException("ImageChartsClient is closed"));
+        } catch (IllegalStateException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private <T> void sendAttempt(final ChartRequest chartRequest, final Attempt<T> attempt, final int count, final CompletableFuture<T> result) {
+        final CompletableFuture<T> sent = attempt.send();
+        result.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable error) {
+                if (error instanceof CancellationException) sent.cancel(false);
+            }
+        });
+        sent.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable error) {
+                if (result.isDone()) return;
+                if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+
+                int status;
+                String errorCode;
+                String retryAfter = null;
+                if (error == null && value instanceof ChartResponse) {
+                    ChartResponse response = (ChartResponse) value;
+                    status = response.getStatus();
+                    errorCode = response.getHeader("x-ic-error-code");
+                    retryAfter = response.getHeader("Retry-After");
+                    if (!retryPolicy.isRetryable(status)) status = -1;
+                } else if (error instanceof ImageChartsException) {
+                    status = ((ImageChartsException) error).getStatusCode();
+                    errorCode = ((ImageChartsException) error).getErrorCode();
+                    if (!retryPolicy.isRetryable(status)) status = -1;
+                } else if (error instanceof IOException) {
+                    status = retryPolicy.isRetryable((IOException) error) ? 0 : -1;
+                    errorCode = error.getClass().getSimpleName();
+                } else {
+                    status = -1;
+                    errorCode = null;
+                }
+
+                if (status == -1 || !retryPolicy.tryRetry(count)) {
+                    if (error != null) result.completeExceptionally(error);
+                    else result.complete(value);
+                    return;
+                }
+
+                metrics.onRetry(status, errorCode);
+                try {
+                    scheduler().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!result.isDone()) retryAsync(chartRequest, attempt, count + 1, result);
+                        }
+                    }, retryPolicy.backoff(count, retryAfter), TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // the client was closed while backing off
+                    if (error != null) result.completeExceptionally(error);
+                    else result.complete(value);
+                } catch (IllegalStateException e) {
+                    // the client was closed before backing off
+                    if (error != null) result.completeExceptionally(error);
+                    else result.complete(value);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return {CachedChart} the chart from the first cache holding it, copied into the faster caches in front of it
+     */
+    private CachedChart lookup(String key) {
+        for (int i = 0; i < caches.size(); i++) {
+            CachedChart cached;
+            try {
+                cached = caches.get(i).get(key);
+            } catch (IOException e) {
+                cached = null;
+            }
+            if (cached != null) {
+                for (int j = 0; j < i; j++) {
+                    put(caches.get(j), key, cached);
+                }
+                return cached;
+            }
+        }
+        return null;
+    }
+
+    private void store(String key, ChartResponse response, byte[] body) {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        for (String header : HttpCachePolicy.STORED_HEADERS) {
+            String value = response.getHeader(header);
+            if (value != null) headers.put(header, value);
+        }
+        store(key, new CachedChart(body, headers, System.currentTimeMillis()));
+    }
+
+    private void store(String key, CachedChart chart) {
+        for (ChartCache cache : caches) {
+            put(cache, key, chart);
+        }
+    }
+
+    private static void put(ChartCache cache, String key, CachedChart chart) {
+        try {
+            cache.put(key, chart);
+        } catch (IOException e) {
+            // a cache failure must never fail the render
+        } catch (RuntimeException e) {
+            // same as above
+        }
+    }
+
+    private static <T> CompletableFuture<T> cancelling(final CompletableFuture<T> result, final Future<?> future) {
+        result.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable error) {
+                if (error instanceof CancellationException) future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static String urlOf(ChartRequest chartRequest, LoadBalancer.Endpoint endpoint) {
+        return endpoint != null ? endpoint.route(chartRequest.getUrl()) : chartRequest.getUrl();
+    }
+
+    private HttpRequestBase newRequest(ChartRequest chartRequest, LoadBalancer.Endpoint endpoint) {
+        String url = urlOf(chartRequest, endpoint);
+        int queryStart = url.indexOf('?');
+        HttpRequestBase request;
+        if (postThreshold > 0 && queryStart != -1 && url.length() - queryStart - 1 > postThreshold) {
+            // same parameters and ichm signature as the query string, sent as a form body
+            HttpPost post = new HttpPost(url.substring(0, queryStart));
+            post.setEntity(new ByteArrayEntity(url.substring(queryStart + 1).getBytes(StandardCharsets.UTF_8), ContentType.APPLICATION_FORM_URLENCODED));
+            request = post;
+        } else {
+            request = new HttpGet(url);
+        }
+        request.setHeader("User-Agent", chartRequest.getUserAgent());
+        for (Map.Entry<String, String> header : chartRequest.getHeaders().entrySet()) {
+            request.setHeader(header.getKey(), header.getValue());
+        }
+        request.setConfig(RequestConfig.custom()
+            .setConnectTimeout(chartRequest.getTimeout())
+            .setConnectionRequestTimeout(chartRequest.getTimeout())
+            .setSocketTimeout(chartRequest.getTimeout())
+            .build());
+        return request;
+    }
+
+    private CloseableHttpAsyncClient asyncClient() {
+        CloseableHttpAsyncClient client = asyncClient;
+        if (client != null) return client;
+
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("ImageChartsClient is closed");
+            if (asyncClient == null) {
+                try {
+                    DefaultConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                        .setIoThreadCount(config.ioThreads)
+                        .setSoKeepAlive(true)
+                        .build());
+                    asyncConnectionManager = new PoolingNHttpClientConnectionManager(ioReactor);
+                } catch (IOReactorException e) {
+                    throw new IllegalStateException("Unable to start the non-blocking I/O reactor", e);
+                }
+                asyncConnectionManager.setMaxTotal(config.maxConnections);
+                asyncConnectionManager.setDefaultMaxPerRoute(config.maxConnectionsPerRoute);
+
+                client = HttpAsyncClients.custom()
+                    .setConnectionManager(asyncConnectionManager)
+                    .setKeepAliveStrategy(keepAliveStrategy)
+                    .disableCookieManagement()
+                    .build();
+                client.start();
+
+                final PoolingNHttpClientConnectionManager manager = asyncConnectionManager;
+                final long idleTimeout = config.idleTimeout;
+                scheduler().scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        manager.closeExpiredConnections();
+                        manager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+                    }
+                }, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+
+                asyncClient = client;
+            }
+            return asyncClient;
+        }
+    }
+
+    /**
+     * @return {ScheduledExecutorService} timer of hedges, retry backoffs and rate limiter waits, shared by both transports
+     */
+    private synchronized ScheduledExecutorService scheduler() {
+        if (closed) throw new IllegalStateException("ImageChartsClient is closed");
+        if (asyncScheduler == null) {
+            asyncScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "image-charts-async-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return asyncScheduler;
+    }
+
+    private static String headerOf(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    private static Map<String, String> headersOf(HttpResponse response) {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        for (Header header : response.getAllHeaders()) {
+            headers.put(header.getName(), header.getValue());
+        }
+        return headers;
+    }
+
+    /**
+     * Release every pooled connection, stop the idle connection evictor and close the caches implementing
+     * {@link Closeable}, so that a {@link DiskChartCache} writes its index
+     *
+     * @throws IOException IOException
+     */
+    @Override
+    public void close() throws IOException {
+        CloseableHttpAsyncClient client;
+        boolean open;
+        synchronized (this) {
+            open = !closed;
+            closed = true;
+            client = asyncClient;
+            if (asyncScheduler != null) asyncScheduler.shutdownNow();
+        }
+        // a shared load balancer counts each client once
+        if (open && loadBalancer != null) loadBalancer.stop();
+        if (http2 != null) http2.close();
+        try {
+            httpClient.close();
+        } finally {
+            try {
+                if (client != null) client.close();
+            } finally {
+                closeCaches();
+            }
+        }
+    }
+
+    private void closeCaches() throws IOException {
+        IOException failure = null;
+        for (ChartCache cache : caches) {
+            if (!(cache instanceof Closeable)) continue;
+            try {
+                ((Closeable) cache).close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Request let through by {@link #admit(ChartRequest)}
+     */
+    private static final class Admission {
+        static final Admission NONE = new Admission(0, null);
+
+        final long start;
+        final CircuitBreaker.Permit permit;
+
+        Admission(long start, CircuitBreaker.Permit permit) {
+            this.start = start;
+            this.permit = permit;
+        }
+    }
+
+    private static final class DefaultHolder {
+        private static final ImageChartsClient INSTANCE = new Builder().build();
+    }
+
+    /**
+     * Timings of a request sent through the non-blocking engine, measured from its creation
+     *
+     * Connections are opened by the I/O reactor, so their setup time is part of FIRST_BYTE here.
+     */
+    private final class MeteredConsumer {
+        private final ChartTrace trace;
+        private final boolean enabled;
+        private final long start;
+        private volatile boolean responded;
+        private long responseReceived;
+
+        MeteredConsumer(ChartTrace trace) {
+            this.trace = trace;
+            this.enabled = metrics != ChartMetrics.NOOP || trace != null || hedgingPolicy.isEnabled();
+            this.start = enabled ? System.nanoTime() : 0;
+        }
+
+        boolean hasResponded() {
+            return responded;
+        }
+
+        void onResponseReceived() {
+            responded = true;
+            if (!enabled) return;
+            responseReceived = System.nanoTime();
+            metrics.onTiming(ChartPhase.FIRST_BYTE, responseReceived - start);
+            if (trace != null) trace.waitNanos = responseReceived - start;
+            if (hedgingPolicy.isEnabled()) hedgingPolicy.record(responseReceived - start);
+        }
+
+        void onCompleted(int status, long bytes) {
+            if (!enabled) return;
+            long download = System.nanoTime() - responseReceived;
+            metrics.onTiming(ChartPhase.DOWNLOAD, download);
+            metrics.onResponse(status, bytes);
+            if (trace != null) {
+                trace.downloadNanos = download;
+                trace.status = status;
+                trace.bytes = bytes;
+            }
+        }
+    }
+
+    public static final class Builder {
+        private int maxConnections = 200;
+        private int maxConnectionsPerRoute = 50;
+        private long keepAlive = 30000;
+        private long idleTimeout = 30000;
+        private long connectionTimeToLive = -1;
+        private int validateAfterInactivity = 2000;
+        private int ioThreads = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+        private final List<ChartCache> caches = new ArrayList<ChartCache>();
+        private boolean singleFlight = false;
+        private boolean httpCaching = false;
+        private int postThreshold = 0;
+        private ChartMetrics metrics = ChartMetrics.NOOP;
+        private RetryPolicy retryPolicy = RetryPolicy.NONE;
+        private HedgingPolicy hedgingPolicy = HedgingPolicy.NONE;
+        private ConcurrencyLimit concurrencyLimit;
+        private CircuitBreaker circuitBreaker;
+        private RateLimiter rateLimiter;
+        private LoadBalancer loadBalancer;
+        private boolean http2 = false;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxConnections  maximum number of pooled connections across all hosts. Default : 200
+         * @return {Builder}
+         */
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * @param maxConnectionsPerRoute  maximum number of pooled connections per host. Default : 50
+         * @return {Builder}
+         */
+        public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * @param keepAlive  maximum time (in millisecond) a connection is kept alive between two requests, unless the server asks for less. Default : 30000
+         * @return {Builder}
+         */
+        public Builder keepAlive(long keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * @param idleTimeout  time (in millisecond) after which idle connections are evicted from the pool by a background thread. Default : 30000
+         * @return {Builder}
+         */
+        public Builder idleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * @param connectionTimeToLive  total lifetime (in millisecond) of a pooled connection, -1 for unlimited. Default : -1
+         * @return {Builder}
+         */
+        public Builder connectionTimeToLive(long connectionTimeToLive) {
+            this.connectionTimeToLive = connectionTimeToLive;
+            return this;
+        }
+
+        /**
+         * @param validateAfterInactivity  inactivity period (in millisecond) after which a pooled connection is checked before being reused. Default : 2000
+         * @return {Builder}
+         */
+        public Builder validateAfterInactivity(int validateAfterInactivity) {
+            this.validateAfterInactivity = validateAfterInactivity;
+            return this;
+        }
+
+        /**
+         * @param ioThreads  number of event-loop threads of the non-blocking engine used by asynchronous renders. Default : min(CPU count, 4)
+         * @return {Builder}
+         */
+        public Builder ioThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        /**
+         * Serve identical charts from a cache instead of calling Image-Charts API. Call it several times to stack caches,
+         * fastest first (e.g. in-memory then on-disk): a hit in a slower cache is copied into the faster ones. Caches
+         * implementing {@link Closeable} are closed along with the client.
+         *
+         * @param cache  chart cache, keyed by chart URL
+         * @return {Builder}
+         */
+        public Builder cache(ChartCache cache) {
+            this.caches.add(cache);
+            return this;
+        }
+
+        /**
+         * Coalesce identical requests: while a chart URL is being rendered, later requests for the same URL wait for that
+         * response instead of calling Image-Charts API again. Responses are then buffered in memory to be shared.
+         *
+         * @param singleFlight  enable request coalescing. Default : false
+         * @return {Builder}
+         */
+        public Builder singleFlight(boolean singleFlight) {
+            this.singleFlight = singleFlight;
+            return this;
+        }
+
+        /**
+         * Honor HTTP caching headers: cached charts are only served while fresh according to their Cache-Control or
+         * Expires headers, stale charts are revalidated with If-None-Match / If-Modified-Since and a 304 response
+         * reuses the cached image. Responses with Cache-Control: no-store are never cached. Without it, cached charts
+         * are served until evicted by the caches themselves.
+         *
+         * A {@link MemoryChartCache} with default settings is used when no cache is configured.
+         *
+         * @param httpCaching  enable HTTP caching semantics. Default : false
+         * @return {Builder}
+         */
+        public Builder httpCaching(boolean httpCaching) {
+            this.httpCaching = httpCaching;
+            return this;
+        }
+
+        /**
+         * Send charts whose encoded query string is longer than this threshold with a POST request, the parameters and
+         * their ichm signature being sent as an application/x-www-form-urlencoded body, so that large chd or graphviz chl
+         * values are not limited by the maximum URL length of servers and proxies
+         *
+         * @param postThreshold  query string length (in characters) above which POST is used, 0 to always use GET. Default : 0
+         * @return {Builder}
+         */
+        public Builder postThreshold(int postThreshold) {
+            if (postThreshold < 0) throw new IllegalArgumentException("postThreshold must be positive");
+            this.postThreshold = postThreshold;
+            return this;
+        }
+
+        /**
+         * @param metrics  listener receiving per-phase timings, response statuses and sizes, and errors. Default : ChartMetrics.NOOP
+         * @return {Builder}
+         */
+        public Builder metrics(ChartMetrics metrics) {
+            this.metrics = metrics != null ? metrics : ChartMetrics.NOOP;
+            return this;
+        }
+
+        /**
+         * @param retryPolicy  when and how transient failures are retried, shared retry budget included. Default : RetryPolicy.NONE
+         * @return {Builder}
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.NONE;
+            return this;
+        }
+
+        /**
+         * Blocking renders of a hedging client go through the non-blocking engine, streaming to a file with toFileAsync() is never hedged
+         *
+         * @param hedgingPolicy  when duplicate requests are sent to cut tail latency, extra load cap included. Default : HedgingPolicy.NONE
+         * @return {Builder}
+         */
+        public Builder hedgingPolicy(HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy != null ? hedgingPolicy : HedgingPolicy.NONE;
+            return this;
+        }
+
+        /**
+         * @param concurrencyLimit  adaptive limit of the requests in flight, rejecting the requests beyond it. Default : none
+         * @return {Builder}
+         */
+        public Builder concurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+            this.concurrencyLimit = concurrencyLimit;
+            return this;
+        }
+
+        /**
+         * @param circuitBreaker  breaker failing requests fast while Image-Charts API is unhealthy. Default : none
+         * @return {Builder}
+         */
+        public Builder circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * @param rateLimiter  per account (icac) request rate bound, shared by every ImageCharts rendering through this client. Default : none
+         * @return {Builder}
+         */
+        public Builder rateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * @param loadBalancer  endpoints of On-Premise render nodes the requests are spread over, in place of the host given to ImageCharts. Default : none
+         * @return {Builder}
+         */
+        public Builder loadBalancer(LoadBalancer loadBalancer) {
+            this.loadBalancer = loadBalancer;
+            return this;
+        }
+
+        /**
+         * Send the requests with the JDK HTTP client (java.net.http module) over HTTP/2, multiplexing concurrent requests
+         * to a host over a single connection. The connection pool settings of this builder then do not apply, and
+         * connection setup time is reported as part of FIRST_BYTE.
+         *
+         * @param http2  use the HTTP/2 transport instead of Apache HttpClient over HTTP/1.1. Default : false
+         * @return {Builder}
+         */
+        public Builder http2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        public ImageChartsClient build() {
+            return new ImageChartsClient(this);
+        }
+    }
+}
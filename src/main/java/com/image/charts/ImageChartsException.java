@@ -1,8 +1,59 @@
 package com.image.charts;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
 public class ImageChartsException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final String errorCode;
 
     public ImageChartsException(String message) {
+        this(message, 0, null);
+    }
+
+    /**
+     * @param message  error message
+     * @param statusCode  HTTP status code returned by Image-Charts API, 0 if unknown
+     * @param errorCode  value of the x-ic-error-code response header, may be null
+     */
+    public ImageChartsException(String message, int statusCode, String errorCode) {
         super(message);
+        this.statusCode = statusCode;
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * @return {int} HTTP status code returned by Image-Charts API, 0 if unknown
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return {String} value of the x-ic-error-code response header, may be null
+     */
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    static ImageChartsException fromErrorHeaders(int statusCode, String validationMessage, String validationCode) {
+        String message = "";
+
+        if (validationMessage != null && !validationMessage.isEmpty()) {
+            JSONArray json = new JSONArray(new JSONTokener(validationMessage));
+            JSONArray messageArray = new JSONArray();
+            for (Object x : json) {
+                messageArray.put(((JSONObject) x).getString("message"));
+            }
+            message = messageArray.join("\n");
+        }
+
+        message = !message.isEmpty() ? message : validationCode;
+        if (message == null) message = "Image-Charts API responded with HTTP " + statusCode;
+
+        return new ImageChartsException(message, statusCode, validationCode);
     }
 }
@@ -0,0 +1,415 @@
+package com.image.charts;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spread the chart requests of an {@link ImageChartsClient} over several On-Premise render nodes.
+ *
+ * Each attempt (first request, retry or hedge) is sent to one of the endpoints in place of the protocol, host and port
+ * given to {@link ImageCharts}, the pathname and the signed query string are kept. The endpoint is picked according to
+ * the {@link Strategy} among the available endpoints, using the number of requests each one is still waiting for.
+ *
+ * Passive health checking ejects an endpoint after consecutiveFailures I/O errors or 5xx responses in a row, for
+ * ejectionTime multiplied by the number of ejections in a row (at most maxEjectionTime). A success resets both counts.
+ * Never more than maxEjectionPercent of the endpoints are ejected at once.
+ *
+ * Active health checking, when a health check path is set, requests that path on every endpoint each interval: an
+ * endpoint is marked down after unhealthyThreshold failed checks in a row and up again after healthyThreshold
+ * successful ones. When no endpoint is available, requests are spread over all of them rather than failed.
+ *
+ * A load balancer can be shared by several clients: its health checks run from the first client built until the last
+ * one is closed.
+ *
+ * {@code ImageChartsClient.builder().loadBalancer(LoadBalancer.builder().endpoint("http://render-1:8080").endpoint("http://render-2:8080").build()).build();}
+ */
+public final class LoadBalancer {
+    public enum Strategy {
+        /**
+         * endpoint with the fewest outstanding requests, ties broken at random
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * best of two endpoints drawn at random, avoiding the herding of many clients on the same least loaded node
+         */
+        POWER_OF_TWO_CHOICES
+    }
+
+    private final List<Endpoint> endpoints;
+    private final Strategy strategy;
+    private final int consecutiveFailures;
+    private final long ejectionTime;
+    private final long maxEjectionTime;
+    private final int maxEjections;
+    private final String healthCheckPath;
+    private final long healthCheckInterval;
+    private final int healthCheckTimeout;
+    private final int healthyThreshold;
+    private final int unhealthyThreshold;
+    private ScheduledExecutorService healthChecker;
+    private int clients;
+
+    private LoadBalancer(Builder builder) {
+        if (builder.origins.isEmpty()) throw new IllegalArgumentException("at least one endpoint is required");
+        List<Endpoint> endpoints = new ArrayList<Endpoint>(builder.origins.size());
+        for (String origin : builder.origins) {
+            endpoints.add(new Endpoint(origin));
+        }
+        this.endpoints = Collections.unmodifiableList(endpoints);
+        this.strategy = builder.strategy;
+        this.consecutiveFailures = builder.consecutiveFailures;
+        this.ejectionTime = TimeUnit.MILLISECONDS.toNanos(builder.ejectionTime);
+        this.maxEjectionTime = TimeUnit.MILLISECONDS.toNanos(builder.maxEjectionTime);
+        this.maxEjections = builder.maxEjectionPercent > 0 ? Math.max(1, (int) (endpoints.size() * builder.maxEjectionPercent / 100)) : 0;
+        this.healthCheckPath = builder.healthCheckPath;
+        this.healthCheckInterval = builder.healthCheckInterval;
+        this.healthCheckTimeout = builder.healthCheckTimeout;
+        this.healthyThreshold = builder.healthyThreshold;
+        this.unhealthyThreshold = builder.unhealthyThreshold;
+    }
+
+    /**
+     * @return {Builder} a new load balancer builder initialized with default settings
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return {List} every endpoint, available or not
+     */
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Pick the endpoint of an attempt, which must then be released by {@link Endpoint#onSuccess}, {@link Endpoint#onFailure} or {@link Endpoint#onIgnored}
+     *
+     * @return {Endpoint} the endpoint, its outstanding requests already incremented
+     */
+    Endpoint acquire() {
+        long now = System.nanoTime();
+        List<Endpoint> candidates = new ArrayList<Endpoint>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now)) candidates.add(endpoint);
+        }
+        if (candidates.isEmpty()) candidates = endpoints;
+
+        Endpoint picked;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = candidates.size();
+        if (size == 1) {
+            picked = candidates.get(0);
+        } else if (strategy == Strategy.POWER_OF_TWO_CHOICES) {
+            int first = random.nextInt(size);
+            int second = (first + 1 + random.nextInt(size - 1)) % size;
+            Endpoint a = candidates.get(first);
+            Endpoint b = candidates.get(second);
+            picked = b.getOutstanding() < a.getOutstanding() ? b : a;
+        } else {
+            int offset = random.nextInt(size);
+            picked = candidates.get(offset);
+            for (int i = 1; i < size; i++) {
+                Endpoint candidate = candidates.get((offset + i) % size);
+                if (candidate.getOutstanding() < picked.getOutstanding()) picked = candidate;
+            }
+        }
+        picked.outstanding.incrementAndGet();
+        return picked;
+    }
+
+    /**
+     * Start the active health checks, if configured and not already started by another client
+     */
+    synchronized void start() {
+        if (healthCheckPath == null || clients++ > 0) return;
+        healthChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "image-charts-health-checker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        healthChecker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (Endpoint endpoint : endpoints) {
+                    endpoint.onHealthCheck(check(endpoint));
+                }
+            }
+        }, 0, healthCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the active health checks once every client started them has stopped them
+     */
+    synchronized void stop() {
+        if (healthCheckPath == null || clients == 0 || --clients > 0) return;
+        healthChecker.shutdownNow();
+        healthChecker = null;
+    }
+
+    private boolean check(Endpoint endpoint) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(endpoint.origin + healthCheckPath).openConnection();
+            connection.setConnectTimeout(healthCheckTimeout);
+            connection.setReadTimeout(healthCheckTimeout);
+            connection.setUseCaches(false);
+            int status = connection.getResponseCode();
+            return status >= 200 && status < 300;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    /**
+     * Eject the endpoint unless too many endpoints are already ejected
+     */
+    private synchronized void eject(Endpoint failed) {
+        int ejected = 0;
+        long now = System.nanoTime();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isEjected(now)) ejected++;
+        }
+        if (ejected < maxEjections) failed.eject(now);
+    }
+
+    /**
+     * A render node and its health
+     */
+    public final class Endpoint {
+        private final String origin;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private int failures;
+        private int ejections;
+        private long ejectedUntil;
+        private boolean ejected;
+        private int healthChecks;
+        private volatile boolean healthy = true;
+
+        private Endpoint(String origin) {
+            this.origin = origin;
+        }
+
+        /**
+         * @return {String} protocol, host and port of the endpoint, e.g. "http://render-1:8080"
+         */
+        public String getOrigin() {
+            return origin;
+        }
+
+        /**
+         * @return {int} requests sent to the endpoint and still waiting for their response
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * @return {boolean} false while the endpoint is ejected by passive health checking or down according to active health checking
+         */
+        public boolean isAvailable() {
+            return isAvailable(System.nanoTime());
+        }
+
+        private boolean isAvailable(long now) {
+            return healthy && !isEjected(now);
+        }
+
+        private synchronized boolean isEjected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+
+        /**
+         * @return {String} the url sent to this endpoint instead of the given one
+         */
+        String route(String url) {
+            int scheme = url.indexOf("://");
+            int path = scheme != -1 ? url.indexOf('/', scheme + 3) : -1;
+            return path != -1 ? origin + url.substring(path) : origin;
+        }
+
+        void onSuccess() {
+            outstanding.decrementAndGet();
+            synchronized (this) {
+                failures = 0;
+                ejections = 0;
+                ejected = false;
+            }
+        }
+
+        void onFailure() {
+            outstanding.decrementAndGet();
+            synchronized (this) {
+                failures++;
+                if (failures < consecutiveFailures || isEjected(System.nanoTime())) return;
+            }
+            // outside of the endpoint lock, the balancer locks every endpoint in turn
+            LoadBalancer.this.eject(this);
+        }
+
+        private synchronized void eject(long now) {
+            failures = 0;
+            ejections++;
+            ejected = true;
+            ejectedUntil = now + Math.min(maxEjectionTime, ejectionTime * ejections);
+        }
+
+        void onIgnored() {
+            outstanding.decrementAndGet();
+        }
+
+        private synchronized void onHealthCheck(boolean success) {
+            if (success == healthy) {
+                healthChecks = 0;
+                return;
+            }
+            healthChecks++;
+            if (healthChecks >= (success ? healthyThreshold : unhealthyThreshold)) {
+                healthy = success;
+                healthChecks = 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return origin;
+        }
+    }
+
+    public static final class Builder {
+        private final List<String> origins = new ArrayList<String>();
+        private Strategy strategy = Strategy.LEAST_OUTSTANDING;
+        private int consecutiveFailures = 5;
+        private long ejectionTime = 30000;
+        private long maxEjectionTime = 300000;
+        private double maxEjectionPercent = 50;
+        private String healthCheckPath;
+        private long healthCheckInterval = 10000;
+        private int healthCheckTimeout = 2000;
+        private int healthyThreshold = 2;
+        private int unhealthyThreshold = 3;
+
+        private Builder() {
+        }
+
+        /**
+         * @param endpoint  protocol, host and optional port of a render node, e.g. "http://render-1:8080"
+         * @return {Builder}
+         */
+        public Builder endpoint(String endpoint) {
+            URI uri = URI.create(endpoint);
+            if (uri.getScheme() == null || uri.getHost() == null) throw new IllegalArgumentException("endpoint must be an absolute url: " + endpoint);
+            if (uri.getRawPath() != null && !uri.getRawPath().isEmpty() && !uri.getRawPath().equals("/")) {
+                throw new IllegalArgumentException("endpoint must not have a path, the pathname is given to ImageCharts: " + endpoint);
+            }
+            this.origins.add(uri.getScheme() + "://" + uri.getRawAuthority());
+            return this;
+        }
+
+        /**
+         * @param strategy  how the endpoint of each request is picked. Default : LEAST_OUTSTANDING
+         * @return {Builder}
+         */
+        public Builder strategy(Strategy strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * @param consecutiveFailures  I/O errors or 5xx responses in a row ejecting an endpoint. Default : 5
+         * @return {Builder}
+         */
+        public Builder consecutiveFailures(int consecutiveFailures) {
+            if (consecutiveFailures < 1) throw new IllegalArgumentException("consecutiveFailures must be at least 1");
+            this.consecutiveFailures = consecutiveFailures;
+            return this;
+        }
+
+        /**
+         * @param ejectionTime  time (in millisecond) an endpoint is ejected for, multiplied by its number of ejections in a row. Default : 30000
+         * @return {Builder}
+         */
+        public Builder ejectionTime(long ejectionTime) {
+            this.ejectionTime = ejectionTime;
+            return this;
+        }
+
+        /**
+         * @param maxEjectionTime  upper bound (in millisecond) of the ejection time. Default : 300000
+         * @return {Builder}
+         */
+        public Builder maxEjectionTime(long maxEjectionTime) {
+            this.maxEjectionTime = maxEjectionTime;
+            return this;
+        }
+
+        /**
+         * @param maxEjectionPercent  share of the endpoints that may be ejected at once, at least one unless 0. Default : 50
+         * @return {Builder}
+         */
+        public Builder maxEjectionPercent(double maxEjectionPercent) {
+            if (maxEjectionPercent < 0 || maxEjectionPercent > 100) throw new IllegalArgumentException("maxEjectionPercent must be in [0, 100]");
+            this.maxEjectionPercent = maxEjectionPercent;
+            return this;
+        }
+
+        /**
+         * @param path  path requested on every endpoint to check its health, a 2xx response being healthy
+         * @param interval  time (in millisecond) between two checks of an endpoint. Default : 10000
+         * @return {Builder}
+         */
+        public Builder healthCheck(String path, long interval) {
+            if (interval <= 0) throw new IllegalArgumentException("interval must be positive");
+            this.healthCheckPath = path.startsWith("/") ? path : "/" + path;
+            this.healthCheckInterval = interval;
+            return this;
+        }
+
+        /**
+         * @param healthCheckTimeout  connect and read timeout (in millisecond) of a health check. Default : 2000
+         * @return {Builder}
+         */
+        public Builder healthCheckTimeout(int healthCheckTimeout) {
+            this.healthCheckTimeout = healthCheckTimeout;
+            return this;
+        }
+
+        /**
+         * @param healthyThreshold  successful health checks in a row marking an endpoint up. Default : 2
+         * @return {Builder}
+         */
+        public Builder healthyThreshold(int healthyThreshold) {
+            this.healthyThreshold = healthyThreshold;
+            return this;
+        }
+
+        /**
+         * @param unhealthyThreshold  failed health checks in a row marking an endpoint down. Default : 3
+         * @return {Builder}
+         */
+        public Builder unhealthyThreshold(int unhealthyThreshold) {
+            this.unhealthyThreshold = unhealthyThreshold;
+            return this;
+        }
+
+        public LoadBalancer build() {
+            return new LoadBalancer(this);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.image.charts;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bound on the extra requests (retries, hedges) sent on top of the first attempts
+ *
+ * Each first attempt earns ratio token, each extra request spends one, and the balance never exceeds max tokens: in the
+ * long run extra requests stay below ratio times the first attempts, whatever the failure rate.
+ */
+final class LoadBudget {
+    private static final long TOKEN = 1000;
+
+    private final long deposit;
+    private final long maxBalance;
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio  tokens earned by each first attempt
+     * @param max  tokens available at rest, allowing bursts on low traffic
+     */
+    LoadBudget(double ratio, int max) {
+        this.deposit = Math.round(ratio * TOKEN);
+        this.maxBalance = max * TOKEN;
+        this.balance = new AtomicLong(this.maxBalance);
+    }
+
+    /**
+     * Credit the budget with a first attempt
+     */
+    void deposit() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= maxBalance) return;
+        } while (!balance.compareAndSet(current, Math.min(maxBalance, current + deposit)));
+    }
+
+    /**
+     * @return {boolean} true if an extra request is allowed, spending one token
+     */
+    boolean tryWithdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < TOKEN) return false;
+        } while (!balance.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    /**
+     * @return {double} number of extra requests currently allowed
+     */
+    double getBalance() {
+        return balance.get() / (double) TOKEN;
+    }
+}
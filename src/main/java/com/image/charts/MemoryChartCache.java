@@ -0,0 +1,247 @@
+package com.image.charts;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded in-process {@link ChartCache} keeping rendered images on the heap.
+ *
+ * Capacity is expressed in bytes (image size plus key). Once full, a new chart is only admitted if it has been requested
+ * more often than the least recently used charts it would evict (TinyLFU admission): access frequencies are estimated by
+ * a count-min sketch of 4-bit counters, halved periodically so that old popularity fades away. One-off charts therefore
+ * cannot flush the hot set. Entries expire {@link Builder#ttl(long)} milliseconds after being rendered.
+ *
+ * {@code ImageChartsClient.builder().cache(MemoryChartCache.builder().maxBytes(64 * 1024 * 1024).build()).build();}
+ */
+public class MemoryChartCache implements ChartCache {
+    private final long maxBytes;
+    private final long ttl;
+    private final LinkedHashMap<String, CachedChart> entries = new LinkedHashMap<String, CachedChart>(256, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    private MemoryChartCache(Builder builder) {
+        this.maxBytes = builder.maxBytes;
+        this.ttl = builder.ttl;
+        this.sketch = new FrequencySketch(builder.expectedEntries);
+    }
+
+    /**
+     * @return {Builder} a new memory cache builder initialized with default settings
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public synchronized CachedChart get(String key) {
+        sketch.increment(key);
+        CachedChart chart = entries.get(key);
+        if (chart != null && ttl > 0 && System.currentTimeMillis() - chart.getStoredAt() > ttl) {
+            entries.remove(key);
+            bytes -= weight(key, chart);
+            evictions++;
+            chart = null;
+        }
+        if (chart == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return chart;
+    }
+
+    @Override
+    public synchronized void put(String key, CachedChart chart) {
+        long weight = weight(key, chart);
+        if (weight > maxBytes) return;
+
+        CachedChart previous = entries.remove(key);
+        if (previous != null) bytes -= weight(key, previous);
+
+        if (bytes + weight > maxBytes && previous == null) {
+            // pick the least recently used victims making room, and only evict them if the candidate is more popular
+            int frequency = sketch.frequency(key);
+            long freed = 0;
+            List<String> victims = new ArrayList<String>();
+            Iterator<Map.Entry<String, CachedChart>> eldest = entries.entrySet().iterator();
+            while (bytes - freed + weight > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, CachedChart> victim = eldest.next();
+                if (sketch.frequency(victim.getKey()) >= frequency) {
+                    rejections++;
+                    return;
+                }
+                victims.add(victim.getKey());
+                freed += weight(victim.getKey(), victim.getValue());
+            }
+            for (String victim : victims) {
+                entries.remove(victim);
+                evictions++;
+            }
+            bytes -= freed;
+        }
+
+        entries.put(key, onHeap(chart));
+        bytes += weight;
+
+        // a replaced entry may be bigger than the previous one
+        Iterator<Map.Entry<String, CachedChart>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, CachedChart> victim = eldest.next();
+            eldest.remove();
+            bytes -= weight(victim.getKey(), victim.getValue());
+            evictions++;
+        }
+    }
+
+    @Override
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, entries.size(), bytes);
+    }
+
+    /**
+     * @return {long} number of charts not admitted because they were less popular than the entries they would evict
+     */
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * Drop every entry, counters and popularity estimates are kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private static long weight(String key, CachedChart chart) {
+        return chart.getSize() + 2L * key.length();
+    }
+
+    /**
+     * Memory-mapped or direct buffers are copied so the cache never pins files or off-heap memory
+     */
+    private static CachedChart onHeap(CachedChart chart) {
+        ByteBuffer content = chart.getContent();
+        if (!content.isDirect()) return chart;
+
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return new CachedChart(bytes, chart.getHeaders(), chart.getStoredAt());
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters packed in longs, aged by halving every counter after a sample period
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int mask;
+        private final int samplePeriod;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int size = Integer.highestOneBit(Math.max(expectedEntries, 16) - 1) << 1;
+            this.table = new long[size];
+            this.mask = size - 1;
+            this.samplePeriod = 10 * size;
+        }
+
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = 15;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = counterOffset(hash, i);
+                frequency = Math.min(frequency, (int) ((table[index] >>> offset) & 0xfL));
+            }
+            return frequency;
+        }
+
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = counterOffset(hash, i);
+                if (((table[index] >>> offset) & 0xfL) != 0xfL) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions == samplePeriod) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        private static int counterOffset(int hash, int i) {
+            // each long holds 16 counters, every hash function uses its own quarter
+            return ((((hash >>> (i * 8)) & 3) << 2) + i) << 2;
+        }
+
+        private static int spread(int hash) {
+            hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+            hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+            return (hash >>> 16) ^ hash;
+        }
+    }
+
+    public static final class Builder {
+        private long maxBytes = 64L * 1024 * 1024;
+        private long ttl = 0;
+        private int expectedEntries = 4096;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxBytes  total size (in bytes) of the cached images and keys. Default : 64 MiB
+         * @return {Builder}
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param ttl  time (in millisecond) after which a rendered chart expires, 0 to disable. Default : 0
+         * @return {Builder}
+         */
+        public Builder ttl(long ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * @param expectedEntries  expected number of cached charts, sizes the frequency sketch. Default : 4096
+         * @return {Builder}
+         */
+        public Builder expectedEntries(int expectedEntries) {
+            this.expectedEntries = expectedEntries;
+            return this;
+        }
+
+        public MemoryChartCache build() {
+            return new MemoryChartCache(this);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.image.charts;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response body stream reporting its download time and size to {@link ChartMetrics} and to the request
+ * {@link ChartTrace} once fully read or closed
+ *
+ * Closing the stream consumes the rest of the body, so that the reported size is the transferred one even when the
+ * caller stops reading early (ImageIO does not read past the last image chunk).
+ */
+final class MeteredInputStream extends FilterInputStream {
+    private final ChartMetrics metrics;
+    private final ChartTrace trace;
+    private final int status;
+    private final long start = System.nanoTime();
+    private long bytes;
+    private boolean reported;
+
+    /**
+     * @param trace  flight recorder trace of the request, or null
+     */
+    MeteredInputStream(InputStream in, ChartMetrics metrics, ChartTrace trace, int status) {
+        super(in);
+        this.metrics = metrics;
+        this.trace = trace;
+        this.status = status;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b == -1) report();
+        else bytes++;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read == -1) report();
+        else bytes += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        bytes += skipped;
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // the connection is only reusable once the body is consumed, which the pooled stream would do on close anyway
+            if (!reported) {
+                byte[] remaining = new byte[4096];
+                while (read(remaining, 0, remaining.length) != -1) {
+                }
+            }
+            super.close();
+        } finally {
+            report();
+        }
+    }
+
+    private void report() {
+        if (reported) return;
+        reported = true;
+        long elapsed = System.nanoTime() - start;
+        metrics.onTiming(ChartPhase.DOWNLOAD, elapsed);
+        metrics.onResponse(status, bytes);
+        if (trace != null) {
+            trace.downloadNanos = elapsed;
+            trace.bytes = bytes;
+        }
+    }
+}
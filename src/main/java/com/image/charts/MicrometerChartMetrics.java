@@ -0,0 +1,159 @@
+package com.image.charts;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * {@link ChartMetrics} publishing to a Micrometer registry
+ *
+ * micrometer-core is an optional dependency of this library, add it to your project to use this adapter.
+ *
+ * Published meters:
+ * - imagecharts.phase : timer tagged with phase (url, connect, first_byte, download, decode)
+ * - imagecharts.responses : counter tagged with status
+ * - imagecharts.response.bytes : distribution summary of response body sizes
+ * - imagecharts.errors : counter tagged with status and code
+ * - imagecharts.retries : counter tagged with status and code
+ * - imagecharts.hedges : counter of the duplicate requests sent by hedging
+ *
+ * {@link #bind(ConcurrencyLimit)} and {@link #bind(CircuitBreaker)} additionally publish their state as gauges.
+ */
+public final class MicrometerChartMetrics implements ChartMetrics {
+    private final MeterRegistry registry;
+    private final Map<ChartPhase, Timer> timers = new EnumMap<ChartPhase, Timer>(ChartPhase.class);
+    private final Map<Integer, Counter> responses = new ConcurrentHashMap<Integer, Counter>();
+    private final Map<String, Counter> errors = new ConcurrentHashMap<String, Counter>();
+    private final Map<String, Counter> retries = new ConcurrentHashMap<String, Counter>();
+    private final DistributionSummary bytes;
+    private final Counter hedges;
+
+    /**
+     * @param registry  registry receiving the meters
+     */
+    public MicrometerChartMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (ChartPhase phase : ChartPhase.values()) {
+            this.timers.put(phase, Timer.builder("imagecharts.phase")
+                .description("Duration of a chart render step")
+                .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+                .register(registry));
+        }
+        this.bytes = DistributionSummary.builder("imagecharts.response.bytes")
+            .description("Size of the response bodies")
+            .baseUnit("bytes")
+            .register(registry);
+        this.hedges = Counter.builder("imagecharts.hedges")
+            .description("Duplicate requests sent because the first one was slow")
+            .register(registry);
+    }
+
+    /**
+     * Publish the imagecharts.concurrency.limit and imagecharts.concurrency.inflight gauges
+     *
+     * @param limit  concurrency limit of the client
+     * @return {MicrometerChartMetrics} this adapter
+     */
+    public MicrometerChartMetrics bind(ConcurrencyLimit limit) {
+        Gauge.builder("imagecharts.concurrency.limit", limit, new ToDoubleFunction<ConcurrencyLimit>() {
+            @Override
+            public double applyAsDouble(ConcurrencyLimit limit) {
+                return limit.getLimit();
+            }
+        }).description("Requests allowed in flight").register(this.registry);
+        Gauge.builder("imagecharts.concurrency.inflight", limit, new ToDoubleFunction<ConcurrencyLimit>() {
+            @Override
+            public double applyAsDouble(ConcurrencyLimit limit) {
+                return limit.getInFlight();
+            }
+        }).description("Requests in flight").register(this.registry);
+        return this;
+    }
+
+    /**
+     * Publish the imagecharts.circuit.state (0 closed, 1 half-open, 2 open) and imagecharts.circuit.failure.rate gauges
+     *
+     * @param breaker  circuit breaker of the client
+     * @return {MicrometerChartMetrics} this adapter
+     */
+    public MicrometerChartMetrics bind(CircuitBreaker breaker) {
+        Gauge.builder("imagecharts.circuit.state", breaker, new ToDoubleFunction<CircuitBreaker>() {
+            @Override
+            public double applyAsDouble(CircuitBreaker breaker) {
+                switch (breaker.getState()) {
+                    case OPEN:
+                        return 2;
+                    case HALF_OPEN:
+                        return 1;
+                    default:
+                        return 0;
+                }
+            }
+        }).description("Circuit breaker state: 0 closed, 1 half-open, 2 open").register(this.registry);
+        Gauge.builder("imagecharts.circuit.failure.rate", breaker, new ToDoubleFunction<CircuitBreaker>() {
+            @Override
+            public double applyAsDouble(CircuitBreaker breaker) {
+                return breaker.getFailureRate();
+            }
+        }).description("Failure rate over the circuit breaker window").register(this.registry);
+        return this;
+    }
+
+    @Override
+    public void onTiming(ChartPhase phase, long nanos) {
+        this.timers.get(phase).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onResponse(int status, long bytes) {
+        Counter counter = this.responses.get(status);
+        if (counter == null) {
+            counter = Counter.builder("imagecharts.responses")
+                .description("HTTP responses received from Image-Charts API")
+                .tag("status", String.valueOf(status))
+                .register(this.registry);
+            this.responses.put(status, counter);
+        }
+        counter.increment();
+        this.bytes.record(bytes);
+    }
+
+    @Override
+    public void onRetry(int status, String errorCode) {
+        failureCounter(this.retries, "imagecharts.retries", "Chart requests sent again after a transient failure", status, errorCode).increment();
+    }
+
+    @Override
+    public void onHedge() {
+        this.hedges.increment();
+    }
+
+    @Override
+    public void onError(int status, String errorCode) {
+        failureCounter(this.errors, "imagecharts.errors", "Failed chart renders", status, errorCode).increment();
+    }
+
+    private Counter failureCounter(Map<String, Counter> counters, String name, String description, int status, String errorCode) {
+        String code = errorCode != null ? errorCode : "unknown";
+        String key = status + ":" + code;
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = Counter.builder(name)
+                .description(description)
+                .tag("status", String.valueOf(status))
+                .tag("code", code)
+                .register(this.registry);
+            counters.put(key, counter);
+        }
+        return counter;
+    }
+}
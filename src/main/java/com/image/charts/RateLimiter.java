@@ -0,0 +1,254 @@
+package com.image.charts;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket bound on the rate of chart requests an {@link ImageChartsClient} sends, to stay within plan quotas.
+ *
+ * Each enterprise account (icac) has its own bucket, shared by every thread and every {@link ImageCharts} rendering
+ * through the client; requests without account share one more bucket. A bucket holds up to burst permits and refills at
+ * rate permits per second. Once empty, a request is handled according to the {@link Mode}: it waits for its permit
+ * (BLOCK), waits unless its permit is further than maxWait away (QUEUE), or fails at once (REJECT). Rejected requests
+ * throw an {@link ImageChartsException} of error code IC_RATE_LIMITED.
+ *
+ * A 429 response pauses the bucket of its account until its Retry-After delay or date (1 second without header) has
+ * passed. The permit of a request rejected by the circuit breaker or the concurrency limit is given back.
+ * Waiting requests of the non-blocking engine are delayed by a timer and never block any thread.
+ *
+ * {@code ImageChartsClient.builder().rateLimiter(RateLimiter.builder().rate(10).account("my-account", 50, 100).build()).build();}
+ */
+public final class RateLimiter {
+    public enum Mode {
+        /**
+         * wait for the next permit, however long
+         */
+        BLOCK,
+        /**
+         * wait for the next permit, or fail at once if it is further than maxWait away
+         */
+        QUEUE,
+        /**
+         * fail at once if no permit is available
+         */
+        REJECT
+    }
+
+    private static final long DEFAULT_RETRY_AFTER = TimeUnit.SECONDS.toNanos(1);
+
+    private final double rate;
+    private final double burst;
+    private final Mode mode;
+    private final long maxWait;
+    private final Map<String, double[]> accounts;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+
+    private RateLimiter(Builder builder) {
+        this.rate = builder.rate;
+        this.burst = builder.burst > 0 ? builder.burst : Math.max(1, builder.rate);
+        this.mode = builder.mode;
+        this.maxWait = TimeUnit.MILLISECONDS.toNanos(builder.maxWait);
+        this.accounts = new HashMap<String, double[]>(builder.accounts);
+    }
+
+    /**
+     * @return {Builder} a new rate limiter builder initialized with default settings
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param account  enterprise account id (icac), or null
+     * @return {double} permits currently available to the account
+     */
+    public double getAvailablePermits(String account) {
+        return bucket(account).available(System.nanoTime());
+    }
+
+    /**
+     * Reserve the permit of a request
+     *
+     * @param account  enterprise account id (icac), or null
+     * @return {long} time to wait (in nanosecond) before sending the request
+     * @throws ImageChartsException IC_RATE_LIMITED when the mode does not allow to wait that long
+     */
+    long reserve(String account) {
+        long wait = bucket(account).reserve(System.nanoTime(), mode == Mode.BLOCK ? Long.MAX_VALUE : mode == Mode.QUEUE ? maxWait : 0);
+        if (wait < 0) {
+            throw new ImageChartsException("Rate limit reached" + (account != null ? " for account " + account : ""), 0, "IC_RATE_LIMITED");
+        }
+        return wait;
+    }
+
+    /**
+     * @return {boolean} true if a permit was available right away and was taken
+     */
+    boolean tryAcquire(String account) {
+        return bucket(account).reserve(System.nanoTime(), 0) == 0;
+    }
+
+    /**
+     * Give back the permit of a request rejected before being sent
+     */
+    void refund(String account) {
+        bucket(account).refund(System.nanoTime());
+    }
+
+    /**
+     * Pause the account after a 429 response
+     *
+     * @param retryAfter  value of the Retry-After response header, in seconds or as an HTTP-date, or null
+     */
+    void onThrottled(String account, String retryAfter) {
+        long delay = RetryAfter.toMillis(retryAfter, System.currentTimeMillis());
+        long pause = delay >= 0 ? TimeUnit.MILLISECONDS.toNanos(delay) : DEFAULT_RETRY_AFTER;
+        long now = System.nanoTime();
+        bucket(account).pause(now, now + pause);
+    }
+
+    private Bucket bucket(String account) {
+        String key = account != null ? account : "";
+        Bucket bucket = buckets.get(key);
+        if (bucket != null) return bucket;
+
+        double[] settings = accounts.get(key);
+        Bucket created = settings != null ? new Bucket(settings[0], settings[1]) : new Bucket(rate, burst);
+        bucket = buckets.putIfAbsent(key, created);
+        return bucket != null ? bucket : created;
+    }
+
+    /**
+     * Permits are stored up to burst while idle. Once they are spent, each request reserves the next free slot, one every
+     * 1 / rate second, so that waiting requests are spread at the sustained rate instead of waking up together: nextFree
+     * is the time the last reserved permit becomes available, permits are only stored again after it.
+     */
+    private static final class Bucket {
+        private final double permitsPerNano;
+        private final double burst;
+        private double stored;
+        private long nextFree;
+        private long pausedUntil;
+
+        Bucket(double rate, double burst) {
+            this.permitsPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+            this.burst = burst;
+            this.stored = burst;
+            this.nextFree = System.nanoTime();
+            this.pausedUntil = nextFree;
+        }
+
+        /**
+         * @param maxWait  longest acceptable wait in nanoseconds
+         * @return {long} wait before the reserved permit, or -1 if it would exceed maxWait and nothing was reserved
+         */
+        synchronized long reserve(long now, long maxWait) {
+            refill(now);
+            if (stored >= 1 && nextFree <= now) {
+                stored -= 1;
+                return 0;
+            }
+            long at = Math.max(nextFree, now) + (long) Math.ceil((1 - stored) / permitsPerNano);
+            if (at - now > maxWait) return -1;
+            stored = 0;
+            nextFree = at;
+            return at - now;
+        }
+
+        synchronized double available(long now) {
+            refill(now);
+            return nextFree > now ? 0 : stored;
+        }
+
+        synchronized void pause(long now, long until) {
+            refill(now);
+            stored = 0;
+            if (until > nextFree) nextFree = until;
+            if (until > pausedUntil) pausedUntil = until;
+        }
+
+        /**
+         * Store the permit again, or free the last reserved slot, never within a 429 pause
+         */
+        synchronized void refund(long now) {
+            refill(now);
+            if (nextFree > now) {
+                nextFree = Math.max(Math.max(now, pausedUntil), nextFree - (long) Math.ceil(1 / permitsPerNano));
+            } else {
+                stored = Math.min(burst, stored + 1);
+            }
+        }
+
+        private void refill(long now) {
+            if (now <= nextFree) return;
+            stored = Math.min(burst, stored + (now - nextFree) * permitsPerNano);
+            nextFree = now;
+        }
+    }
+
+    public static final class Builder {
+        private double rate = 10;
+        private double burst = 0;
+        private Mode mode = Mode.BLOCK;
+        private long maxWait = 1000;
+        private final Map<String, double[]> accounts = new HashMap<String, double[]>();
+
+        private Builder() {
+        }
+
+        /**
+         * @param rate  sustained requests per second of each account without specific settings. Default : 10
+         * @return {Builder}
+         */
+        public Builder rate(double rate) {
+            if (rate <= 0) throw new IllegalArgumentException("rate must be positive");
+            this.rate = rate;
+            return this;
+        }
+
+        /**
+         * @param burst  requests that may be sent at once after an idle period. Default : rate (at least 1)
+         * @return {Builder}
+         */
+        public Builder burst(int burst) {
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * @param account  enterprise account id (icac)
+         * @param rate  sustained requests per second of this account
+         * @param burst  requests this account may send at once after an idle period
+         * @return {Builder}
+         */
+        public Builder account(String account, double rate, int burst) {
+            if (rate <= 0) throw new IllegalArgumentException("rate must be positive");
+            this.accounts.put(account, new double[] { rate, Math.max(1, burst) });
+            return this;
+        }
+
+        /**
+         * @param mode  behavior of requests exceeding the rate. Default : BLOCK
+         * @return {Builder}
+         */
+        public Builder mode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * @param maxWait  longest wait (in millisecond) for a permit in QUEUE mode. Default : 1000
+         * @return {Builder}
+         */
+        public Builder maxWait(long maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        public RateLimiter build() {
+            return new RateLimiter(this);
+        }
+    }
+}
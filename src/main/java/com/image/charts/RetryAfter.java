@@ -0,0 +1,32 @@
+package com.image.charts;
+
+import org.apache.http.client.utils.DateUtils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retry-After response header (RFC 9110), either a delay in seconds or an HTTP-date
+ */
+final class RetryAfter {
+
+    private RetryAfter() {
+    }
+
+    /**
+     * @param value  value of the Retry-After response header, or null
+     * @param now  current time in millisecond since epoch, to which an HTTP-date is compared
+     * @return {long} delay in millisecond, 0 for a date already past, or -1 when the header is missing or malformed
+     */
+    static long toMillis(String value, long now) {
+        if (value == null) return -1;
+        String trimmed = value.trim();
+        try {
+            long seconds = Long.parseLong(trimmed);
+            return seconds >= 0 ? TimeUnit.SECONDS.toMillis(seconds) : -1;
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(trimmed);
+            return date != null ? Math.max(0, date.getTime() - now) : -1;
+        }
+    }
+}
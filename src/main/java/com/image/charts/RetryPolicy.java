@@ -0,0 +1,204 @@
+package com.image.charts;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When and how an {@link ImageChartsClient} retries a failed chart request.
+ *
+ * Transient failures are retried: connection resets, connect and read timeouts, and 502, 503 and 504 responses.
+ * Validation errors (400 with an x-ic-error-code), unknown hosts, TLS failures and interrupted requests are not.
+ * Attempts are spaced by an exponential backoff with full jitter: each wait is drawn uniformly between 0 and
+ * min(maxBackoff, initialBackoff * multiplier ^ retry), or follows the Retry-After header of the response when shorter
+ * than maxBackoff.
+ *
+ * Retries are bounded by a budget shared by every request of the policy: each first attempt earns budgetRatio retry,
+ * each retry spends one, and the balance never exceeds minRetries. During an outage the retries therefore add at most
+ * budgetRatio extra load instead of multiplying it by maxAttempts.
+ *
+ * {@code ImageChartsClient.builder().retryPolicy(RetryPolicy.builder().maxAttempts(3).build()).build();}
+ */
+public final class RetryPolicy {
+    /**
+     * Policy never retrying, used by default
+     */
+    public static final RetryPolicy NONE = builder().maxAttempts(1).build();
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final double multiplier;
+    private final Set<Integer> retryableStatuses;
+    private final LoadBudget budget;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.multiplier = builder.multiplier;
+        this.retryableStatuses = new HashSet<Integer>(builder.retryableStatuses);
+        this.budget = new LoadBudget(builder.budgetRatio, builder.minRetries);
+    }
+
+    /**
+     * @return {Builder} a new retry policy builder initialized with default settings
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return {int} maximum number of attempts per request, first one included
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return {double} number of retries currently allowed by the budget
+     */
+    public double getBudget() {
+        return budget.getBalance();
+    }
+
+    /**
+     * @return {boolean} true if the request may succeed when sent again after this I/O failure
+     */
+    boolean isRetryable(IOException error) {
+        if (error instanceof UnknownHostException || error instanceof SSLException) return false;
+        if (error instanceof InterruptedIOException) {
+            // aborted and interrupted requests are InterruptedIOException too, only timeouts are transient
+            return error instanceof SocketTimeoutException || error instanceof ConnectTimeoutException;
+        }
+        return true;
+    }
+
+    /**
+     * @return {boolean} true if the request may succeed when sent again after this response status
+     */
+    boolean isRetryable(int status) {
+        return retryableStatuses.contains(status);
+    }
+
+    /**
+     * Credit the retry budget with a first attempt
+     */
+    void onRequest() {
+        if (maxAttempts > 1) budget.deposit();
+    }
+
+    /**
+     * @param attempt  number of attempts already made
+     * @return {boolean} true if one more attempt is allowed, spending one retry from the budget
+     */
+    boolean tryRetry(int attempt) {
+        return attempt < maxAttempts && budget.tryWithdraw();
+    }
+
+    /**
+     * @param attempt  number of attempts already made, 1 or more
+     * @param retryAfter  value of the Retry-After response header, or null
+     * @return {long} time to wait (in millisecond) before the next attempt
+     */
+    long backoff(int attempt, String retryAfter) {
+        long delay = RetryAfter.toMillis(retryAfter, System.currentTimeMillis());
+        if (delay >= 0 && delay <= maxBackoff) return delay;
+        double ceiling = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, attempt - 1));
+        return (long) (ThreadLocalRandom.current().nextDouble() * ceiling);
+    }
+
+    public static final class Builder {
+        private int maxAttempts = 3;
+        private long initialBackoff = 100;
+        private long maxBackoff = 2000;
+        private double multiplier = 2;
+        private Set<Integer> retryableStatuses = new HashSet<Integer>();
+        private double budgetRatio = 0.1;
+        private int minRetries = 10;
+
+        private Builder() {
+            retryableStatuses.add(502);
+            retryableStatuses.add(503);
+            retryableStatuses.add(504);
+        }
+
+        /**
+         * @param maxAttempts  maximum number of attempts per request, first one included. Default : 3
+         * @return {Builder}
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be at least 1");
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param initialBackoff  upper bound (in millisecond) of the wait before the first retry. Default : 100
+         * @return {Builder}
+         */
+        public Builder initialBackoff(long initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        /**
+         * @param maxBackoff  upper bound (in millisecond) of any wait between attempts. Default : 2000
+         * @return {Builder}
+         */
+        public Builder maxBackoff(long maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * @param multiplier  growth factor of the backoff bound after each retry. Default : 2
+         * @return {Builder}
+         */
+        public Builder multiplier(double multiplier) {
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * @param statuses  HTTP statuses worth retrying. Default : 502, 503, 504
+         * @return {Builder}
+         */
+        public Builder retryOn(int... statuses) {
+            this.retryableStatuses = new HashSet<Integer>();
+            for (int status : statuses) {
+                this.retryableStatuses.add(status);
+            }
+            return this;
+        }
+
+        /**
+         * @param budgetRatio  retries earned by each first attempt, so the maximum extra load of retries. Default : 0.1
+         * @return {Builder}
+         */
+        public Builder budgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+            return this;
+        }
+
+        /**
+         * @param minRetries  retries available at rest, allowing bursts of failures on low traffic. Default : 10
+         * @return {Builder}
+         */
+        public Builder minRetries(int minRetries) {
+            this.minRetries = minRetries;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.image.charts;
+
+/**
+ * Allocation-free application/x-www-form-urlencoded encoding into a {@link StringBuilder}.
+ *
+ * Produces exactly what {@code URLEncoder.encode(value, "UTF-8")} returns, without the intermediate strings and byte
+ * arrays, so that chart URLs can be built in a single reusable buffer.
+ */
+final class UrlEncoding {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) UNRESERVED[c] = true;
+        for (char c = 'A'; c <= 'Z'; c++) UNRESERVED[c] = true;
+        for (char c = '0'; c <= '9'; c++) UNRESERVED[c] = true;
+        UNRESERVED['.'] = true;
+        UNRESERVED['-'] = true;
+        UNRESERVED['*'] = true;
+        UNRESERVED['_'] = true;
+    }
+
+    private UrlEncoding() {
+    }
+
+    /**
+     * Append everything before the query string, formatted like {@link java.net.URL#toString()}
+     *
+     * @param out  destination buffer
+     * @return {StringBuilder} out
+     */
+    static StringBuilder appendOrigin(StringBuilder out, String protocol, String host, int port, String pathname) {
+        out.append(protocol).append("://");
+        if (host.indexOf(':') >= 0 && !host.startsWith("[")) {
+            out.append('[').append(host).append(']');
+        } else {
+            out.append(host);
+        }
+        if (port != -1) out.append(':').append(port);
+        return out.append(pathname).append('?');
+    }
+
+    /**
+     * Append a query parameter value, null is encoded as an empty value
+     *
+     * @param out  destination buffer
+     * @param value  parameter value, its toString() is encoded
+     * @return {StringBuilder} out
+     */
+    static StringBuilder appendEncoded(StringBuilder out, Object value) {
+        if (value == null) return out;
+        CharSequence chars = value instanceof CharSequence ? (CharSequence) value : value.toString();
+
+        int length = chars.length();
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            if (c < 128) {
+                if (UNRESERVED[c]) {
+                    out.append(c);
+                } else if (c == ' ') {
+                    out.append('+');
+                } else {
+                    appendByte(out, c);
+                }
+            } else if (c < 0x800) {
+                appendByte(out, 0xc0 | (c >> 6));
+                appendByte(out, 0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                appendByte(out, 0xf0 | (codePoint >> 18));
+                appendByte(out, 0x80 | ((codePoint >> 12) & 0x3f));
+                appendByte(out, 0x80 | ((codePoint >> 6) & 0x3f));
+                appendByte(out, 0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates are replaced by '?', as the UTF-8 charset encoder does
+                appendByte(out, '?');
+            } else {
+                appendByte(out, 0xe0 | (c >> 12));
+                appendByte(out, 0x80 | ((c >> 6) & 0x3f));
+                appendByte(out, 0x80 | (c & 0x3f));
+            }
+        }
+        return out;
+    }
+
+    private static void appendByte(StringBuilder out, int b) {
+        out.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+    }
+}
@@ -0,0 +1,109 @@
+package com.image.charts;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HMAC-SHA256 signature (ichm) of chart query strings.
+ *
+ * {@link Mac} instances are expensive to create and initialize but not thread-safe, so each thread keeps one initialized
+ * instance per secret (up to {@link #MAX_SECRETS_PER_THREAD}, least recently used first out) along with its scratch
+ * buffers. Signing a query already held in a {@link StringBuilder} then allocates nothing: the query is copied into a
+ * reused byte array, digested into a reused output array and hex-encoded straight back into the builder.
+ */
+final class UrlSigner {
+    static final int MAX_SECRETS_PER_THREAD = 8;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final ThreadLocal<UrlSigner> SIGNERS = new ThreadLocal<UrlSigner>() {
+        @Override
+        protected UrlSigner initialValue() {
+            return new UrlSigner();
+        }
+    };
+
+    private final Map<String, Mac> macs = new LinkedHashMap<String, Mac>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Mac> eldest) {
+            return size() > MAX_SECRETS_PER_THREAD;
+        }
+    };
+    private final byte[] digest = new byte[32];
+    private final char[] hex = new char[64];
+    private byte[] data = new byte[512];
+
+    private UrlSigner() {
+    }
+
+    /**
+     * Sign a range of characters of a buffer, then append the hex signature to the same buffer
+     *
+     * @param out  buffer holding the query string to sign
+     * @param from  index of the first character of the query string
+     * @param to  index after the last character of the query string
+     * @param secret  SECRET_KEY
+     * @return {StringBuilder} out
+     * @throws NoSuchAlgorithmException NoSuchAlgorithmException
+     * @throws InvalidKeyException InvalidKeyException
+     */
+    static StringBuilder appendSignature(StringBuilder out, int from, int to, String secret) throws NoSuchAlgorithmException, InvalidKeyException {
+        return SIGNERS.get().sign(out, from, to, secret);
+    }
+
+    /**
+     * @param secret  SECRET_KEY
+     * @param data  query string to sign
+     * @return {String} hex signature
+     * @throws NoSuchAlgorithmException NoSuchAlgorithmException
+     * @throws InvalidKeyException InvalidKeyException
+     */
+    static String sign(String secret, String data) throws NoSuchAlgorithmException, InvalidKeyException {
+        StringBuilder buffer = new StringBuilder(data.length() + 64).append(data);
+        return appendSignature(buffer, 0, data.length(), secret).substring(data.length());
+    }
+
+    private StringBuilder sign(StringBuilder out, int from, int to, String secret) throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac mac = mac(secret);
+        int length = to - from;
+        if (length > data.length) data = new byte[Math.max(length, data.length * 2)];
+
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            char c = out.charAt(from + i);
+            if (c >= 0x80) {
+                ascii = false;
+                break;
+            }
+            data[i] = (byte) c;
+        }
+        if (ascii) {
+            mac.update(data, 0, length);
+        } else {
+            // values are percent-encoded, only raw parameter names may hold non-ASCII characters
+            mac.update(out.substring(from, to).getBytes(StandardCharsets.UTF_8));
+        }
+
+        try {
+            mac.doFinal(digest, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        Hex.encode(digest, digest.length, hex);
+        return out.append(hex);
+    }
+
+    private Mac mac(String secret) throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac mac = macs.get(secret);
+        if (mac == null) {
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            macs.put(secret, mac);
+        }
+        return mac;
+    }
+}
@@ -0,0 +1,53 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Base64AppenderTest {
+
+  @Test
+  @DisplayName("encode - matches java.util.Base64 for every padding")
+  void matchesJdkEncoder() throws IOException {
+    Random random = new Random(42);
+    for (int length = 0; length < 64; length++) {
+      byte[] bytes = new byte[length];
+      random.nextBytes(bytes);
+
+      StringBuilder out = new StringBuilder();
+      long appended = Base64Appender.encode(new ByteArrayInputStream(bytes), out);
+
+      assertEquals(Base64.getEncoder().encodeToString(bytes), out.toString());
+      assertEquals(Base64Appender.encodedLength(length), appended);
+    }
+  }
+
+  @Test
+  @DisplayName("encode - carries partial groups across short reads")
+  void carriesPartialGroups() throws IOException {
+    byte[] bytes = new byte[100000];
+    new Random(7).nextBytes(bytes);
+
+    // deliver the stream 7 bytes at a time so groups of 3 bytes straddle reads
+    InputStream trickle = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return super.read(b, off, Math.min(len, 7));
+      }
+    };
+
+    StringWriter out = new StringWriter();
+    Base64Appender.encode(trickle, out);
+
+    assertEquals(Base64.getEncoder().encodeToString(bytes), out.toString());
+  }
+}
@@ -0,0 +1,154 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchRendererTest {
+  private LocalChartServer server;
+  private ImageChartsClient client;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new LocalChartServer();
+    client = ImageChartsClient.builder().build();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    client.close();
+    server.close();
+  }
+
+  private List<ImageCharts> charts(int count, int invalidEvery) {
+    List<ImageCharts> charts = new ArrayList<ImageCharts>();
+    for (int i = 0; i < count; i++) {
+      ImageCharts chart = server.chart(client).cht("p").chd("t:1,2," + i);
+      charts.add(invalidEvery > 0 && i % invalidEvery == 0 ? chart : chart.chs("2x2"));
+    }
+    return charts;
+  }
+
+  @Test
+  @DisplayName("render - reports every chart to the sink")
+  void reportsEveryChart() throws InterruptedException {
+    final Map<Integer, Object> outcomes = new ConcurrentHashMap<Integer, Object>();
+
+    BatchResult result = BatchRenderer.builder().parallelism(4).build().render(charts(30, 10), new ChartSink() {
+      @Override
+      public void onSuccess(int index, ImageCharts chart, byte[] image) {
+        outcomes.put(index, image);
+      }
+
+      @Override
+      public void onFailure(int index, ImageCharts chart, Throwable error) {
+        outcomes.put(index, error);
+      }
+    });
+
+    assertEquals(27, result.getSucceeded());
+    assertEquals(3, result.getFailed());
+    assertEquals(30, outcomes.size());
+    assertTrue(outcomes.get(0) instanceof ImageChartsException);
+    assertArrayEquals(LocalChartServer.PNG, (byte[]) outcomes.get(1));
+  }
+
+  @Test
+  @DisplayName("render - never exceeds the parallelism cap")
+  void boundsConcurrency() throws InterruptedException {
+    server.setDelay(20);
+
+    BatchResult result = BatchRenderer.builder().parallelism(3).virtualThreads(false).build().render(charts(24, 0), new ChartSink() {
+      @Override
+      public void onSuccess(int index, ImageCharts chart, byte[] image) {
+      }
+
+      @Override
+      public void onFailure(int index, ImageCharts chart, Throwable error) {
+        fail(error);
+      }
+    });
+
+    assertEquals(24, result.getSucceeded());
+    assertTrue(server.getMaxInFlight() <= 3);
+    assertTrue(server.getMaxInFlight() > 1);
+  }
+
+  @Test
+  @DisplayName("render - reports sink errors as failures")
+  void reportsSinkErrors() throws InterruptedException {
+    final List<Throwable> errors = new ArrayList<Throwable>();
+
+    BatchResult result = BatchRenderer.builder().parallelism(1).build().render(charts(2, 0), new ChartSink() {
+      @Override
+      public void onSuccess(int index, ImageCharts chart, byte[] image) throws IOException {
+        throw new IOException("disk full");
+      }
+
+      @Override
+      public synchronized void onFailure(int index, ImageCharts chart, Throwable error) {
+        errors.add(error);
+      }
+    });
+
+    assertEquals(2, result.getFailed());
+    assertEquals("disk full", errors.get(0).getMessage());
+  }
+
+  @Test
+  @DisplayName("render - counts failures whose sink throws")
+  void countsFailingSinks() throws InterruptedException {
+    final List<Throwable> uncaught = new CopyOnWriteArrayList<Throwable>();
+    ExecutorService executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+          @Override
+          public void uncaughtException(Thread thread, Throwable error) {
+            uncaught.add(error);
+          }
+        });
+        return thread;
+      }
+    });
+
+    try {
+      BatchResult result = BatchRenderer.builder().parallelism(2).executor(executor).build().render(charts(4, 1), new ChartSink() {
+        @Override
+        public void onSuccess(int index, ImageCharts chart, byte[] image) {
+        }
+
+        @Override
+        public void onFailure(int index, ImageCharts chart, Throwable error) {
+          throw new IllegalStateException("sink down");
+        }
+      });
+
+      assertEquals(0, result.getSucceeded());
+      assertEquals(4, result.getFailed());
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    for (Throwable error : uncaught) {
+      assertEquals("sink down", error.getMessage());
+      assertTrue(error.getSuppressed()[0] instanceof ImageChartsException, String.valueOf(error.getSuppressed()[0]));
+    }
+  }
+}
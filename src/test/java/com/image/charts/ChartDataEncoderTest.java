@@ -0,0 +1,61 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChartDataEncoderTest {
+
+  @Test
+  @DisplayName("encode - writes exact values in a: and t: formats")
+  void encodeDecimal() {
+    double[][] series = {{-100, 200.5, 75.55, 110}, {1e-5, 2e8, Double.NaN}};
+
+    assertEquals("a:-100,200.5,75.55,110|0.00001,200000000,_", ChartDataEncoder.encode(series, ChartDataFormat.AWESOME));
+    assertEquals("t:10,20,30", ChartDataEncoder.encode(new int[]{10, 20, 30}, ChartDataFormat.TEXT));
+  }
+
+  @Test
+  @DisplayName("encode - scales values against the maximum in s: and e: formats")
+  void encodeScaled() {
+    double[][] series = {{0, 30.5, 61, Double.NaN}, {-1, 61}};
+
+    assertEquals("s:Af9_,_9", ChartDataEncoder.encode(series, ChartDataFormat.SIMPLE));
+    assertEquals("e:AAgA..__,__..", ChartDataEncoder.encode(series, ChartDataFormat.EXTENDED));
+    assertEquals("s:AAA", ChartDataEncoder.encode(new int[]{0, 0, 0}, ChartDataFormat.SIMPLE));
+  }
+
+  @Test
+  @DisplayName("encode - picks the shortest lossless format")
+  void encodeShortest() {
+    assertEquals("s:A9f", ChartDataEncoder.encode(new int[]{0, 122, 62}, ChartDataFormat.AUTO));
+    assertEquals("e:AA..gA", ChartDataEncoder.encode(new int[]{0, 4095, 2048}, ChartDataFormat.AUTO));
+    assertEquals("e:VVqq..", ChartDataEncoder.encode(new int[]{1, 2, 3}, ChartDataFormat.AUTO));
+    assertEquals("a:1,2,4", ChartDataEncoder.encode(new int[]{1, 2, 4}, ChartDataFormat.AUTO));
+    assertEquals("a:-1,200,3000", ChartDataEncoder.encode(new int[]{-1, 200, 3000}, ChartDataFormat.AUTO));
+
+    int[] values = {0, 7, 61, 122, 4095, -3};
+    for (ChartDataFormat format : ChartDataFormat.values()) {
+      assertEquals(ChartDataEncoder.encode(new double[][]{{0, 7, 61, 122, 4095, -3}}, format), ChartDataEncoder.encode(values, format), format.name());
+    }
+  }
+
+  @Test
+  @DisplayName("chd - accepts primitive arrays")
+  void chdAcceptsArrays() throws Exception {
+    assertEquals(
+      new ImageCharts().cht("lc").chd("a:1.5,2,3|4,5,6").toURL(),
+      new ImageCharts().cht("lc").chd(new double[][]{{1.5, 2, 3}, {4, 5, 6}}).toURL()
+    );
+    assertEquals(
+      new ImageCharts().chd("a:10,20,30").toURL(),
+      new ImageCharts().chd(new int[]{10, 20, 30}).toURL(),
+      "exact values unless a format is requested"
+    );
+    assertEquals(
+      new ImageCharts().chd("t:1,2,3").toURL(),
+      new ImageCharts().chd(new double[]{1, 2, 3}, ChartDataFormat.TEXT).toURL()
+    );
+  }
+}
@@ -0,0 +1,121 @@
+package com.image.charts;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChartEventsTest {
+  private LocalChartServer server;
+  private ImageChartsClient client;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new LocalChartServer();
+    client = ImageChartsClient.builder().cache(MemoryChartCache.builder().build()).build();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  @DisplayName("events - no trace without recording")
+  void noTraceWithoutRecording() {
+    assertNull(ChartEvents.begin());
+  }
+
+  @Test
+  @DisplayName("events - records chart requests and cache hits")
+  void recordsRequests() throws Exception {
+    List<RecordedEvent> events;
+    Recording recording = new Recording();
+    try {
+      recording.enable("com.image.charts.ChartRequest");
+      recording.enable("com.image.charts.ChartCacheHit");
+      recording.start();
+
+      ImageCharts chart = server.chart(client).cht("p").chd("t:1,2,3").chs("2x2");
+      chart.toBuffer();
+      chart.toBuffer();
+      try {
+        server.chart(client).cht("bvs").toBytes();
+        fail("chs is required");
+      } catch (ImageChartsException expected) {
+      }
+      File file = File.createTempFile("chart", ".png");
+      file.deleteOnExit();
+      server.chart(client).cht("lc").chd("t:1,2,3").chs("3x3").toFileAsync(file.getAbsolutePath()).join();
+
+      recording.stop();
+      events = dump(recording);
+    } finally {
+      recording.close();
+    }
+
+    List<RecordedEvent> requests = new ArrayList<RecordedEvent>();
+    List<RecordedEvent> hits = new ArrayList<RecordedEvent>();
+    for (RecordedEvent event : events) {
+      if (event.getEventType().getName().equals("com.image.charts.ChartRequest")) requests.add(event);
+      if (event.getEventType().getName().equals("com.image.charts.ChartCacheHit")) hits.add(event);
+    }
+    assertEquals(4, requests.size());
+    assertEquals(1, hits.size());
+
+    RecordedEvent first = requests.get(0);
+    assertEquals("p", first.getString("chartType"));
+    assertEquals(200, first.getInt("status"));
+    assertEquals(LocalChartServer.PNG.length, first.getLong("bytes"));
+    assertFalse(first.getBoolean("cacheHit"));
+    assertTrue(first.getDuration("connect").toNanos() > 0);
+    assertTrue(first.getDuration("wait").toNanos() > 0);
+    assertTrue(first.getDuration("decode").toNanos() > 0);
+
+    RecordedEvent cached = requests.get(1);
+    assertTrue(cached.getBoolean("cacheHit"));
+    assertEquals(first.getInt("urlHash"), cached.getInt("urlHash"));
+    assertEquals(first.getInt("urlHash"), hits.get(0).getInt("urlHash"));
+    assertEquals(LocalChartServer.PNG.length, hits.get(0).getLong("bytes"));
+
+    RecordedEvent failed = requests.get(2);
+    assertEquals("bvs", failed.getString("chartType"));
+    assertEquals(400, failed.getInt("status"));
+    assertEquals("IC_MISSING_CHS", failed.getString("errorCode"));
+
+    RecordedEvent async = requests.get(3);
+    assertEquals(200, async.getInt("status"));
+    assertEquals(LocalChartServer.PNG.length, async.getLong("bytes"));
+  }
+
+  private static List<RecordedEvent> dump(Recording recording) throws IOException {
+    Path path = Files.createTempFile("charts", ".jfr");
+    try {
+      recording.dump(path);
+      List<RecordedEvent> events = new ArrayList<RecordedEvent>(RecordingFile.readAllEvents(path));
+      events.sort(new Comparator<RecordedEvent>() {
+        @Override
+        public int compare(RecordedEvent a, RecordedEvent b) {
+          return a.getStartTime().compareTo(b.getStartTime());
+        }
+      });
+      return events;
+    } finally {
+      Files.delete(path);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package com.image.charts;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChartMetricsTest {
+  private LocalChartServer server;
+  private RecordingMetrics metrics;
+  private ImageChartsClient client;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new LocalChartServer();
+    metrics = new RecordingMetrics();
+    client = ImageChartsClient.builder().metrics(metrics).build();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  @DisplayName("metrics - times every phase of a blocking render")
+  void timesBlockingRender() throws Exception {
+    server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBuffer();
+
+    for (ChartPhase phase : ChartPhase.values()) {
+      assertEquals(1, metrics.count(phase), phase.name());
+    }
+    assertEquals(1, metrics.responses.size());
+    assertEquals("200:" + LocalChartServer.PNG.length, metrics.responses.get(0));
+    assertTrue(metrics.errors.isEmpty());
+
+    server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytes();
+    assertEquals(1, metrics.count(ChartPhase.CONNECT), "pooled connection is not timed again");
+    assertEquals(2, metrics.count(ChartPhase.FIRST_BYTE));
+  }
+
+  @Test
+  @DisplayName("metrics - times non-blocking renders")
+  void timesAsyncRender() throws Exception {
+    server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBufferAsync().join();
+
+    assertEquals(1, metrics.count(ChartPhase.URL));
+    assertEquals(1, metrics.count(ChartPhase.FIRST_BYTE));
+    assertEquals(1, metrics.count(ChartPhase.DOWNLOAD));
+    assertEquals(1, metrics.count(ChartPhase.DECODE));
+    assertEquals("200:" + LocalChartServer.PNG.length, metrics.responses.get(0));
+  }
+
+  @Test
+  @DisplayName("metrics - reports API errors with their code")
+  void reportsErrors() throws Exception {
+    final ImageCharts chart = server.chart(client).cht("p").chd("t:1,2,3");
+    assertThrows(ImageChartsException.class, new Executable() {
+      @Override
+      public void execute() throws Throwable {
+        chart.toBytes();
+      }
+    });
+    assertThrows(Exception.class, new Executable() {
+      @Override
+      public void execute() throws Throwable {
+        chart.toBytesAsync().join();
+      }
+    });
+
+    assertEquals(2, metrics.errors.size());
+    assertEquals("400:IC_MISSING_CHS", metrics.errors.get(0));
+    assertEquals("400:IC_MISSING_CHS", metrics.errors.get(1));
+  }
+
+  @Test
+  @DisplayName("metrics - reports failed downloads")
+  void reportsDownloadErrors() {
+    server.truncateNext(1);
+    assertThrows(IOException.class, new Executable() {
+      @Override
+      public void execute() throws Throwable {
+        server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytes();
+      }
+    });
+    assertEquals(1, metrics.errors.size());
+    assertTrue(metrics.errors.get(0).startsWith("0:"), metrics.errors.get(0));
+
+    server.truncateNext(1);
+    assertThrows(CompletionException.class, new Executable() {
+      @Override
+      public void execute() {
+        server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytesAsync().join();
+      }
+    });
+    assertEquals(2, metrics.errors.size());
+  }
+
+  @Test
+  @DisplayName("metrics - reports downloads failing while streamed")
+  void reportsStreamingErrors() throws IOException {
+    final File file = File.createTempFile("chart", ".png");
+    file.deleteOnExit();
+    List<Executable> renders = Arrays.asList(new Executable() {
+      @Override
+      public void execute() throws Throwable {
+        server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toFile(file.getAbsolutePath());
+      }
+    }, new Executable() {
+      @Override
+      public void execute() throws Throwable {
+        server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").writeTo(new ByteArrayOutputStream());
+      }
+    }, new Executable() {
+      @Override
+      public void execute() throws Throwable {
+        server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").writeTo(Channels.newChannel(new ByteArrayOutputStream()));
+      }
+    }, new Executable() {
+      @Override
+      public void execute() throws Throwable {
+        server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toDataURI(new StringBuilder());
+      }
+    });
+
+    for (int i = 0; i < renders.size(); i++) {
+      server.truncateNext(1);
+      assertThrows(IOException.class, renders.get(i), "render " + i);
+      assertEquals(i + 1, metrics.errors.size(), "render " + i);
+      assertTrue(metrics.errors.get(i).startsWith("0:"), metrics.errors.get(i));
+    }
+  }
+
+  @Test
+  @DisplayName("metrics - publishes to a Micrometer registry")
+  void publishesToMicrometer() throws Exception {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    ImageChartsClient client = ImageChartsClient.builder().metrics(new MicrometerChartMetrics(registry)).build();
+    try {
+      server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBuffer();
+      try {
+        server.chart(client).cht("p").toBytes();
+        fail("chs is required");
+      } catch (ImageChartsException expected) {
+      }
+
+      assertEquals(1, registry.get("imagecharts.phase").tag("phase", "decode").timer().count());
+      assertEquals(1, registry.get("imagecharts.responses").tag("status", "200").counter().count());
+      assertEquals(1, registry.get("imagecharts.errors").tag("code", "IC_MISSING_CHS").counter().count());
+      assertEquals(LocalChartServer.PNG.length, registry.get("imagecharts.response.bytes").summary().totalAmount());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("metrics - publishes concurrency limit and circuit breaker gauges")
+  void publishesGauges() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    ConcurrencyLimit limit = ConcurrencyLimit.builder().initialLimit(7).build();
+    CircuitBreaker breaker = CircuitBreaker.builder().minimumRequests(1).build();
+    new MicrometerChartMetrics(registry).bind(limit).bind(breaker);
+
+    assertEquals(7, registry.get("imagecharts.concurrency.limit").gauge().value());
+    assertEquals(0, registry.get("imagecharts.circuit.state").gauge().value());
+    breaker.onFailure(breaker.tryAcquire());
+    assertEquals(2, registry.get("imagecharts.circuit.state").gauge().value());
+    assertEquals(1, registry.get("imagecharts.circuit.failure.rate").gauge().value());
+  }
+
+  private static final class RecordingMetrics implements ChartMetrics {
+    private final Map<ChartPhase, List<Long>> timings = new EnumMap<ChartPhase, List<Long>>(ChartPhase.class);
+    private final List<String> responses = new CopyOnWriteArrayList<String>();
+    private final List<String> errors = new CopyOnWriteArrayList<String>();
+
+    RecordingMetrics() {
+      for (ChartPhase phase : ChartPhase.values()) timings.put(phase, new CopyOnWriteArrayList<Long>());
+    }
+
+    int count(ChartPhase phase) {
+      return timings.get(phase).size();
+    }
+
+    @Override
+    public void onTiming(ChartPhase phase, long nanos) {
+      assertTrue(nanos >= 0);
+      timings.get(phase).add(nanos);
+    }
+
+    @Override
+    public void onResponse(int status, long bytes) {
+      responses.add(status + ":" + bytes);
+    }
+
+    @Override
+    public void onError(int status, String errorCode) {
+      errors.add(status + ":" + errorCode);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChartTemplateTest {
+
+  @Test
+  @DisplayName("with - derives a new template and leaves the original untouched")
+  void withDerives() throws Exception {
+    ChartTemplate base = new ImageCharts().cht("p").chs("100x100").toTemplate();
+    ChartTemplate derived = base.with("chd", "t:1,2,3").with("chs", "200x200");
+
+    assertEquals("https://image-charts.com:443/chart?cht=p&chs=100x100", base.toURL());
+    assertEquals("https://image-charts.com:443/chart?cht=p&chs=200x200&chd=t%3A1%2C2%2C3", derived.toURL());
+    assertEquals("200x200", derived.get("chs"));
+    assertNull(base.get("chd"));
+  }
+
+  @Test
+  @DisplayName("with - keeps the same parameter order as ImageCharts setters, even across long derivation chains")
+  void withKeepsOrder() throws Exception {
+    ChartTemplate template = new ImageCharts().cht("p").toTemplate();
+    ImageCharts chart = new ImageCharts().cht("p");
+    for (int i = 0; i < 50; i++) {
+      template = template.with("chtt", "title " + i).with("chd", "t:" + i);
+      chart.chtt("title " + i).chd("t:" + i);
+    }
+
+    assertEquals(chart.toURL(), template.toURL());
+  }
+
+  @Test
+  @DisplayName("toTemplate - snapshots the chart, later modifications are not visible")
+  void toTemplateSnapshots() throws Exception {
+    ImageCharts chart = new ImageCharts("secret").icac("account").cht("p");
+    ChartTemplate template = chart.toTemplate();
+    chart.chs("100x100");
+
+    assertNull(template.get("chs"));
+    assertEquals(new ImageCharts("secret").icac("account").cht("p").toURL(), template.toURL());
+  }
+
+  @Test
+  @DisplayName("toChart - copies the shared parameters on first modification")
+  void toChartCopiesOnWrite() throws Exception {
+    final ChartTemplate template = new ImageCharts().cht("p").toTemplate();
+    ImageCharts chart = template.toChart().chs("100x100");
+
+    assertEquals("https://image-charts.com:443/chart?cht=p&chs=100x100", chart.toURL());
+    assertNull(template.get("chs"));
+    assertThrows(UnsupportedOperationException.class, new Executable() {
+      @Override
+      public void execute() {
+        template.getParams().put("chs", "100x100");
+      }
+    });
+  }
+
+  @Test
+  @DisplayName("with - can be used from many threads at once")
+  void withIsThreadSafe() throws Exception {
+    final ChartTemplate base = new ImageCharts().cht("bvg").chs("700x300").toTemplate();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> urls = new ArrayList<Future<String>>();
+      for (int i = 0; i < 200; i++) {
+        final int value = i;
+        urls.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return base.with("chd", "t:" + value).toChart().chtt("chart " + value).toURL();
+          }
+        }));
+      }
+      for (int i = 0; i < urls.size(); i++) {
+        assertEquals("https://image-charts.com:443/chart?cht=bvg&chs=700x300&chd=t%3A" + i + "&chtt=chart+" + i, urls.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals("https://image-charts.com:443/chart?cht=bvg&chs=700x300", base.toURL());
+  }
+}
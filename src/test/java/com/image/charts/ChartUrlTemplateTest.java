@@ -0,0 +1,66 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.net.URLEncoder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChartUrlTemplateTest {
+
+  @Test
+  @DisplayName("toURL - generates the same url as ImageCharts")
+  void toUrlMatchesImageCharts() throws Exception {
+    ChartTemplate template = new ImageCharts().cht("p").chd("t:0").chs("100x100").chtt("Sales & costs").toTemplate();
+    ChartUrlTemplate urls = template.compile("chd", "chl");
+
+    assertEquals(
+      template.toChart().chd("t:1,2,3").chl("a|b").toURL(),
+      urls.toURL("t:1,2,3", "a|b")
+    );
+    assertEquals("https://image-charts.com:443/chart?cht=p&chd=&chs=100x100&chtt=Sales+%26+costs&chl=", urls.toURL(null, null));
+  }
+
+  @Test
+  @DisplayName("appendTo - signs the generated url")
+  void appendToSigns() throws Exception {
+    ChartUrlTemplate urls = new ImageCharts("plop").cht("p").toTemplate().compile("chd", "chs", "icac");
+    StringBuilder buffer = new StringBuilder("url: ");
+
+    urls.appendTo(buffer, "t:1,2,3", "100x100", "test_fixture");
+
+    assertEquals("url: https://image-charts.com:443/chart?cht=p&chd=t%3A1%2C2%2C3&chs=100x100&icac=test_fixture&ichm=71bd93758b49ed28fdabd23a0ff366fe7bf877296ea888b9aaf4ede7978bdc8d", buffer.toString());
+  }
+
+  @Test
+  @DisplayName("appendTo - rejects a wrong number of values")
+  void appendToRejectsWrongArity() {
+    final ChartUrlTemplate urls = new ImageCharts().cht("p").toTemplate().compile("chd");
+
+    assertThrows(IllegalArgumentException.class, new Executable() {
+      @Override
+      public void execute() throws Throwable {
+        urls.toURL("t:1", "100x100");
+      }
+    });
+  }
+
+  @Test
+  @DisplayName("appendEncoded - encodes like URLEncoder")
+  void appendEncodedMatchesURLEncoder() throws Exception {
+    Random random = new Random(42);
+    String[] samples = {"", "t:1,2,3", "a b+c", "Żółć €", "😀|\uD83D", "~!@#$%^&*()_-.'\"<>/?"};
+    for (String sample : samples) {
+      assertEquals(URLEncoder.encode(sample, "UTF-8"), UrlEncoding.appendEncoded(new StringBuilder(), sample).toString());
+    }
+    for (int i = 0; i < 1000; i++) {
+      char[] chars = new char[random.nextInt(20)];
+      for (int c = 0; c < chars.length; c++) chars[c] = (char) random.nextInt(i % 2 == 0 ? 128 : 0x10000);
+      String sample = new String(chars);
+      assertEquals(URLEncoder.encode(sample, "UTF-8"), UrlEncoding.appendEncoded(new StringBuilder(), sample).toString());
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+  @Test
+  @DisplayName("circuit breaker - opens on failure rate, then closes after successful trials")
+  void opensAndCloses() throws InterruptedException {
+    CircuitBreaker breaker = CircuitBreaker.builder()
+      .failureRateThreshold(0.5).minimumRequests(4).windowSize(10).openDuration(50).halfOpenRequests(2).build();
+
+    for (int i = 0; i < 3; i++) {
+      breaker.onFailure(breaker.tryAcquire());
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "below minimum requests");
+
+    breaker.onSuccess(breaker.tryAcquire());
+    breaker.onFailure(breaker.tryAcquire());
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertNull(breaker.tryAcquire());
+
+    Thread.sleep(60);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    CircuitBreaker.Permit first = breaker.tryAcquire();
+    CircuitBreaker.Permit second = breaker.tryAcquire();
+    assertNotNull(first);
+    assertNotNull(second);
+    assertNull(breaker.tryAcquire(), "trial requests only");
+    breaker.onSuccess(first);
+    breaker.onSuccess(second);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertEquals(0, breaker.getFailureRate(), 0);
+  }
+
+  @Test
+  @DisplayName("circuit breaker - a failed trial opens it again")
+  void reopens() throws InterruptedException {
+    CircuitBreaker breaker = CircuitBreaker.builder().minimumRequests(1).openDuration(20).build();
+
+    breaker.onFailure(breaker.tryAcquire());
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    Thread.sleep(30);
+    breaker.onFailure(breaker.tryAcquire());
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertNull(breaker.tryAcquire());
+  }
+
+  @Test
+  @DisplayName("circuit breaker - only trials count while half open")
+  void countsTrialsOnly() throws InterruptedException {
+    CircuitBreaker breaker = CircuitBreaker.builder().minimumRequests(1).openDuration(20).halfOpenRequests(1).build();
+    CircuitBreaker.Permit lateIgnored = breaker.tryAcquire();
+    CircuitBreaker.Permit lateSuccess = breaker.tryAcquire();
+    CircuitBreaker.Permit lateFailure = breaker.tryAcquire();
+    breaker.onFailure(breaker.tryAcquire());
+    Thread.sleep(30);
+
+    CircuitBreaker.Permit trial = breaker.tryAcquire();
+    assertNotNull(trial);
+    breaker.onIgnored(lateIgnored);
+    breaker.onSuccess(lateSuccess);
+    assertNull(breaker.tryAcquire(), "releasing a request admitted before the trial frees no slot");
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    breaker.onFailure(lateFailure);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(), "a request admitted before the trial does not reopen it");
+
+    breaker.onIgnored(trial);
+    trial = breaker.tryAcquire();
+    assertNotNull(trial, "an ignored trial gives its slot back");
+    breaker.onSuccess(trial);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+}
@@ -0,0 +1,49 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrencyLimitTest {
+  @Test
+  @DisplayName("concurrency limit - rejects requests beyond the limit")
+  void rejectsBeyondLimit() {
+    ConcurrencyLimit limit = ConcurrencyLimit.builder().initialLimit(2).build();
+
+    assertTrue(limit.tryAcquire());
+    assertTrue(limit.tryAcquire());
+    assertFalse(limit.tryAcquire());
+    assertEquals(2, limit.getInFlight());
+
+    limit.onIgnored();
+    assertTrue(limit.tryAcquire());
+  }
+
+  @Test
+  @DisplayName("concurrency limit - grows additively and shrinks multiplicatively")
+  void adapts() {
+    ConcurrencyLimit limit = ConcurrencyLimit.builder().initialLimit(10).minLimit(2).maxLimit(12).backoffRatio(0.5).maxLatency(100).build();
+
+    for (int i = 0; i < 5; i++) {
+      for (int j = 0; j < 10; j++) assertTrue(limit.tryAcquire());
+      for (int j = 0; j < 10; j++) limit.onSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    assertEquals(12, limit.getLimit(), "capped by max limit");
+
+    limit.tryAcquire();
+    limit.onDropped();
+    assertEquals(6, limit.getLimit());
+
+    limit.tryAcquire();
+    limit.onSuccess(TimeUnit.MILLISECONDS.toNanos(500));
+    assertEquals(3, limit.getLimit(), "slow responses count as overload");
+
+    limit.tryAcquire();
+    limit.onDropped();
+    assertEquals(2, limit.getLimit(), "floored by min limit");
+    assertEquals(0, limit.getInFlight());
+  }
+}
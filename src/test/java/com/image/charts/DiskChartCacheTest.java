@@ -0,0 +1,150 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskChartCacheTest {
+  private Path directory;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("image-charts-cache");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    File[] files = directory.toFile().listFiles();
+    if (files != null) {
+      for (File file : files) file.delete();
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  private static CachedChart chart(int size) {
+    byte[] content = new byte[size];
+    content[0] = (byte) size;
+    return new CachedChart(content, Collections.singletonMap("Content-Type", "image/png"), System.currentTimeMillis());
+  }
+
+  private static byte[] bytes(CachedChart chart) {
+    ByteBuffer content = chart.getContent();
+    byte[] bytes = new byte[content.remaining()];
+    content.get(bytes);
+    return bytes;
+  }
+
+  @Test
+  @DisplayName("get - serves stored images with their headers")
+  void roundTrip() throws IOException {
+    DiskChartCache cache = DiskChartCache.builder(directory).build();
+    cache.put("https://image-charts.com/chart?cht=p", new CachedChart(LocalChartServer.PNG, Collections.singletonMap("Content-Type", "image/png"), 1L));
+
+    CachedChart cached = cache.get("https://image-charts.com/chart?cht=p");
+
+    assertArrayEquals(LocalChartServer.PNG, bytes(cached));
+    assertEquals("image/png", cached.getHeader("content-type"));
+    assertNull(cache.get("https://image-charts.com/chart?cht=bvg"));
+    assertEquals(1, cache.stats().getHits());
+    assertEquals(1, cache.stats().getMisses());
+  }
+
+  @Test
+  @DisplayName("put - evicts least recently used entries above the size limit")
+  void evictsLeastRecentlyUsed() throws IOException {
+    DiskChartCache cache = DiskChartCache.builder(directory).maxBytes(250).build();
+    cache.put("a", chart(100));
+    cache.put("b", chart(100));
+    cache.get("a");
+    cache.put("c", chart(100));
+
+    assertNotNull(cache.get("a"));
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("c"));
+    assertEquals(200, cache.stats().getBytes());
+    assertEquals(1, cache.stats().getEvictions());
+    assertFalse(Files.exists(directory.resolve(DiskChartCache.fileName("b"))));
+  }
+
+  @Test
+  @DisplayName("get - evicts entries older than the max age")
+  void evictsExpired() throws IOException {
+    DiskChartCache cache = DiskChartCache.builder(directory).maxAge(1000).build();
+    cache.put("old", new CachedChart(new byte[10], null, System.currentTimeMillis() - 2000));
+
+    assertNull(cache.get("old"));
+    assertEquals(0, cache.stats().getEntries());
+  }
+
+  @Test
+  @DisplayName("build - reloads the index written on close")
+  void reloadsIndex() throws IOException {
+    DiskChartCache cache = DiskChartCache.builder(directory).build();
+    cache.put("a", chart(42));
+    cache.close();
+
+    CachedChart cached = DiskChartCache.builder(directory).build().get("a");
+
+    assertEquals(42, cached.getSize());
+    assertEquals("image/png", cached.getHeader("Content-Type"));
+  }
+
+  @Test
+  @DisplayName("build - reloads the entries appended to the index without close")
+  void reloadsAppendedEntries() throws IOException {
+    DiskChartCache cache = DiskChartCache.builder(directory).build();
+    cache.put("a", new CachedChart(new byte[42], Collections.singletonMap("ETag", "\"v1\""), 1L));
+    cache.put("b", chart(10));
+    cache.put("a", new CachedChart(new byte[42], Collections.singletonMap("ETag", "\"v2\""), 2L));
+
+    DiskChartCache reloaded = DiskChartCache.builder(directory).build();
+
+    assertEquals("\"v2\"", reloaded.get("a").getHeader("etag"));
+    assertEquals(2, reloaded.get("a").getStoredAt());
+    assertEquals("image/png", reloaded.get("b").getHeader("Content-Type"));
+    assertEquals(52, reloaded.stats().getBytes());
+    reloaded.close();
+    assertEquals(2, Files.readAllLines(directory.resolve("index.jsonl")).size());
+  }
+
+  @Test
+  @DisplayName("build - recovers images missing from the index")
+  void recoversUnindexedImages() throws IOException {
+    DiskChartCache.builder(directory).build().put("a", chart(42));
+    Files.delete(directory.resolve("index.jsonl"));
+
+    assertEquals(42, DiskChartCache.builder(directory).build().get("a").getSize());
+  }
+
+  @Test
+  @DisplayName("client - serves repeated charts from the disk cache")
+  void clientServesFromCache() throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+    LocalChartServer server = new LocalChartServer();
+    DiskChartCache cache = DiskChartCache.builder(directory).build();
+    ImageChartsClient client = ImageChartsClient.builder().cache(cache).build();
+    try {
+      for (int i = 0; i < 3; i++) {
+        assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytes());
+      }
+      assertEquals("data:image/png;base64,", server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toDataURI().substring(0, 22));
+
+      assertEquals(1, server.getRequests());
+      assertEquals(3, cache.stats().getHits());
+    } finally {
+      client.close();
+      server.close();
+    }
+  }
+}
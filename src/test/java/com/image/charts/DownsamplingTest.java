@@ -0,0 +1,79 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownsamplingTest {
+
+  private static double[] sine(int length) {
+    double[] values = new double[length];
+    for (int i = 0; i < length; i++) values[i] = Math.sin(i / 1000.0) * 100;
+    return values;
+  }
+
+  @Test
+  @DisplayName("lttb - keeps first, last and the peaks of the series")
+  void lttbKeepsShape() {
+    double[] values = sine(50000);
+    values[25000] = 1000;
+
+    double[] reduced = Downsampling.lttb(500).apply(values, 0);
+
+    assertEquals(500, reduced.length);
+    assertEquals(values[0], reduced[0]);
+    assertEquals(values[values.length - 1], reduced[reduced.length - 1]);
+    assertTrue(contains(reduced, 1000));
+  }
+
+  @Test
+  @DisplayName("minMax - keeps the minimum and maximum of every bucket")
+  void minMaxKeepsExtremes() {
+    double[] values = sine(50000);
+    values[100] = -1000;
+    values[40000] = 1000;
+
+    double[] reduced = Downsampling.minMax().apply(values, 300);
+
+    assertTrue(reduced.length <= 600);
+    assertTrue(contains(reduced, -1000));
+    assertTrue(contains(reduced, 1000));
+    assertEquals(values[values.length - 1], reduced[reduced.length - 1]);
+  }
+
+  @Test
+  @DisplayName("apply - leaves short series untouched and reduces several series in parallel")
+  void applyMultipleSeries() {
+    double[] small = {1, 2, 3};
+    double[][] series = {sine(200000), sine(200000), small};
+
+    double[][] reduced = Downsampling.lttb().apply(series, 700);
+
+    assertEquals(700, reduced[0].length);
+    assertArrayEquals(reduced[0], reduced[1]);
+    assertSame(small, reduced[2]);
+  }
+
+  @Test
+  @DisplayName("chd - downsamples to the chart width")
+  void chdDownsamplesToChartWidth() throws Exception {
+    String chd = new ImageCharts().chs("100x100").chd(sine(10000), ChartDataFormat.AWESOME, Downsampling.lttb()).toTemplate().get("chd").toString();
+
+    assertEquals(100, chd.split(",").length);
+    assertThrows(IllegalStateException.class, new Executable() {
+      @Override
+      public void execute() {
+        new ImageCharts().chd(sine(10000), ChartDataFormat.AWESOME, Downsampling.lttb());
+      }
+    });
+  }
+
+  private static boolean contains(double[] values, double expected) {
+    for (double value : values) {
+      if (value == expected) return true;
+    }
+    return false;
+  }
+}
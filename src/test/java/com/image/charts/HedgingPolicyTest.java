@@ -0,0 +1,40 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HedgingPolicyTest {
+  @Test
+  @DisplayName("hedging - delay follows the observed percentile within bounds")
+  void followsPercentile() {
+    HedgingPolicy policy = HedgingPolicy.builder().percentile(90).minDelay(5).maxDelay(500).build();
+    assertEquals(500, policy.getDelay(), "max delay until enough samples");
+
+    for (int i = 1; i <= 1024; i++) policy.record(TimeUnit.MILLISECONDS.toNanos(i % 100 + 1));
+    assertEquals(90, policy.getDelay());
+
+    for (int i = 0; i < 1024; i++) policy.record(TimeUnit.MILLISECONDS.toNanos(1));
+    assertEquals(5, policy.getDelay(), "clamped to min delay");
+  }
+
+  @Test
+  @DisplayName("hedging - budget caps the extra load")
+  void capsExtraLoad() {
+    HedgingPolicy policy = HedgingPolicy.builder().maxExtraLoad(0.5).build();
+    assertTrue(policy.isEnabled());
+    for (int i = 0; i < 10; i++) assertTrue(policy.tryHedge(), "burst allowance");
+    assertFalse(policy.tryHedge());
+
+    policy.onRequest();
+    assertFalse(policy.tryHedge());
+    policy.onRequest();
+    assertTrue(policy.tryHedge());
+
+    assertFalse(HedgingPolicy.NONE.isEnabled());
+    assertFalse(HedgingPolicy.NONE.tryHedge());
+  }
+}
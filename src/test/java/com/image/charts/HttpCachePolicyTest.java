@@ -0,0 +1,98 @@
+package com.image.charts;
+
+import org.apache.http.client.utils.DateUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpCachePolicyTest {
+
+  private static CachedChart chart(long storedAt, String... headers) {
+    Map<String, String> map = new LinkedHashMap<String, String>();
+    for (int i = 0; i < headers.length; i += 2) map.put(headers[i], headers[i + 1]);
+    return new CachedChart(new byte[1], map, storedAt);
+  }
+
+  @Test
+  @DisplayName("isFresh - honors Cache-Control max-age and Age")
+  void honorsMaxAge() {
+    long now = System.currentTimeMillis();
+
+    assertTrue(HttpCachePolicy.isFresh(chart(now - 5000, "Cache-Control", "public, max-age=10"), now));
+    assertFalse(HttpCachePolicy.isFresh(chart(now - 11000, "Cache-Control", "public, max-age=10"), now));
+    assertFalse(HttpCachePolicy.isFresh(chart(now - 5000, "Cache-Control", "max-age=10", "Age", "6"), now));
+    assertFalse(HttpCachePolicy.isFresh(chart(now, "Cache-Control", "no-cache, max-age=10"), now));
+    assertFalse(HttpCachePolicy.isFresh(chart(now), now));
+  }
+
+  @Test
+  @DisplayName("isFresh - falls back to Expires then Last-Modified heuristic")
+  void fallsBackToExpires() {
+    long now = System.currentTimeMillis();
+    String date = DateUtils.formatDate(new Date(now));
+
+    assertTrue(HttpCachePolicy.isFresh(chart(now, "Date", date, "Expires", DateUtils.formatDate(new Date(now + 60000))), now + 30000));
+    assertFalse(HttpCachePolicy.isFresh(chart(now, "Date", date, "Expires", DateUtils.formatDate(new Date(now + 60000))), now + 61000));
+    assertEquals(100000, HttpCachePolicy.freshnessLifetime(chart(now, "Date", date, "Last-Modified", DateUtils.formatDate(new Date(now - 1000000)))));
+  }
+
+  @Test
+  @DisplayName("revalidate - sends the cached validators")
+  void revalidateSendsValidators() {
+    ChartRequest request = HttpCachePolicy.revalidate(new ChartRequest("http://localhost/chart", null, 5000), chart(0, "ETag", "\"abc\"", "Last-Modified", "Thu, 01 Jan 2015 00:00:00 GMT"));
+
+    assertEquals("\"abc\"", request.getHeaders().get("If-None-Match"));
+    assertEquals("Thu, 01 Jan 2015 00:00:00 GMT", request.getHeaders().get("If-Modified-Since"));
+    assertNull(HttpCachePolicy.revalidate(new ChartRequest("http://localhost/chart", null, 5000), chart(0)));
+  }
+
+  @Test
+  @DisplayName("client - serves fresh charts and revalidates stale ones")
+  void clientRevalidates() throws IOException, NoSuchAlgorithmException, InvalidKeyException, InterruptedException {
+    LocalChartServer server = new LocalChartServer();
+    server.setResponseHeader("ETag", "\"v1\"");
+    server.setResponseHeader("Cache-Control", "max-age=1");
+    ImageChartsClient client = ImageChartsClient.builder().httpCaching(true).build();
+    try {
+      server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytes();
+      server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytes();
+      assertEquals(1, server.getRequests());
+
+      Thread.sleep(1100);
+      assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytes());
+      assertEquals(2, server.getRequests());
+      assertEquals(1, server.getNotModified());
+
+      // the 304 refreshed the cached chart
+      server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytesAsync().join();
+      assertEquals(2, server.getRequests());
+    } finally {
+      client.close();
+      server.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - never caches no-store responses")
+  void clientSkipsNoStore() throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+    LocalChartServer server = new LocalChartServer();
+    server.setResponseHeader("Cache-Control", "no-store");
+    ImageChartsClient client = ImageChartsClient.builder().httpCaching(true).build();
+    try {
+      server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytes();
+      server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytes();
+      assertEquals(2, server.getRequests());
+    } finally {
+      client.close();
+      server.close();
+    }
+  }
+}
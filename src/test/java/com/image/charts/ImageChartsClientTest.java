@@ -0,0 +1,711 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageChartsClientTest {
+  private LocalChartServer server;
+  private ImageChartsClient client;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new LocalChartServer();
+    client = ImageChartsClient.builder().maxConnectionsPerRoute(4).build();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  @DisplayName("client - renders through the pooled client")
+  void rendersThroughClient() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+    BufferedImage image = server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBuffer();
+
+    assertEquals(2, image.getWidth());
+    assertEquals(1, server.getRequests());
+  }
+
+  @Test
+  @DisplayName("client - releases and reuses the connection between renders")
+  void reusesConnection() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+    for (int i = 0; i < 3; i++) {
+      server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBuffer();
+      assertEquals(0, client.getLeasedConnections());
+      assertEquals(1, client.getAvailableConnections());
+    }
+  }
+
+  @Test
+  @DisplayName("client - releases the connection when the API rejects the chart")
+  void releasesConnectionOnError() {
+    ImageChartsException exception = assertThrows(ImageChartsException.class, new Executable() {
+      @Override
+      public void execute() throws Throwable {
+        server.chart(client).cht("p").chd("t:1,2,3").toBuffer();
+      }
+    });
+
+    assertEquals("\"\\\"chs\\\" is required\"", exception.getMessage());
+    assertEquals(400, exception.getStatusCode());
+    assertEquals("IC_MISSING_CHS", exception.getErrorCode());
+    assertEquals(0, client.getLeasedConnections());
+  }
+
+  @Test
+  @DisplayName("client - defaults to a shared client")
+  void defaultsToSharedClient() {
+    assertSame(ImageChartsClient.getDefault(), ImageChartsClient.getDefault());
+  }
+
+  @Test
+  @DisplayName("toBytes - yields the image bytes as returned by the API")
+  void toBytesWorks() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+    assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytes());
+  }
+
+  @Test
+  @DisplayName("writeTo - streams the image bytes to an output stream or a channel")
+  void writeToWorks() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    long written = server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").writeTo(stream);
+    assertEquals(LocalChartServer.PNG.length, written);
+    assertArrayEquals(LocalChartServer.PNG, stream.toByteArray());
+
+    ByteArrayOutputStream channel = new ByteArrayOutputStream();
+    server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").writeTo(Channels.newChannel(channel));
+    assertArrayEquals(LocalChartServer.PNG, channel.toByteArray());
+  }
+
+  @Test
+  @DisplayName("toFile - transfers the image bytes to the file without re-encoding")
+  void toFileTransfersBytes() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+    File file = File.createTempFile("chart", ".png");
+    file.deleteOnExit();
+
+    server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toFile(file.getPath());
+
+    assertArrayEquals(LocalChartServer.PNG, Files.readAllBytes(file.toPath()));
+  }
+
+  @Test
+  @DisplayName("toDataURI - encodes the image bytes as returned by the API")
+  void toDataURIEncodesRawBytes() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+    String expected = "data:image/png;base64," + Base64.getEncoder().encodeToString(LocalChartServer.PNG);
+
+    assertEquals(expected, server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toDataURI());
+
+    StringWriter writer = new StringWriter();
+    server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toDataURI(writer);
+    assertEquals(expected, writer.toString());
+  }
+
+  @Test
+  @DisplayName("toBytesAsync - completes with the raw image bytes")
+  void toBytesAsyncWorks() throws ExecutionException, InterruptedException {
+    byte[] bytes = server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytesAsync().get();
+
+    assertArrayEquals(LocalChartServer.PNG, bytes);
+  }
+
+  @Test
+  @DisplayName("toBufferAsync - keeps many renders in flight")
+  void toBufferAsyncConcurrent() throws ExecutionException, InterruptedException {
+    server.setDelay(50);
+    List<CompletableFuture<BufferedImage>> futures = new ArrayList<CompletableFuture<BufferedImage>>();
+    for (int i = 0; i < 20; i++) {
+      futures.add(server.chart(client).cht("p").chd("t:1,2," + i).chs("2x2").toBufferAsync());
+    }
+
+    for (CompletableFuture<BufferedImage> future : futures) {
+      assertEquals(2, future.get().getHeight());
+    }
+    assertEquals(20, server.getRequests());
+  }
+
+  @Test
+  @DisplayName("toBufferAsync - completes exceptionally when the API rejects the chart")
+  void toBufferAsyncRejects() {
+    final CompletableFuture<BufferedImage> future = server.chart(client).cht("p").chd("t:1,2,3").toBufferAsync();
+
+    ExecutionException exception = assertThrows(ExecutionException.class, new Executable() {
+      @Override
+      public void execute() throws Throwable {
+        future.get();
+      }
+    });
+
+    assertTrue(exception.getCause() instanceof ImageChartsException);
+    assertEquals("IC_MISSING_CHS", ((ImageChartsException) exception.getCause()).getErrorCode());
+  }
+
+  @Test
+  @DisplayName("toFileAsync - streams the image inside a file")
+  void toFileAsyncWorks() throws ExecutionException, InterruptedException, IOException {
+    File file = File.createTempFile("chart", ".png");
+    file.deleteOnExit();
+
+    server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toFileAsync(file.getPath()).get();
+
+    assertArrayEquals(LocalChartServer.PNG, Files.readAllBytes(file.toPath()));
+  }
+
+  @Test
+  @DisplayName("singleFlight - coalesces identical in-flight requests")
+  void singleFlightCoalesces() throws Exception {
+    final ImageChartsClient coalescing = ImageChartsClient.builder().singleFlight(true).build();
+    server.setDelay(300);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      List<Future<byte[]>> renders = new ArrayList<Future<byte[]>>();
+      ExecutorService callers = Executors.newFixedThreadPool(10);
+      for (int i = 0; i < 10; i++) {
+        renders.add(callers.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws Exception {
+            start.await();
+            return server.chart(coalescing).cht("p").chd("t:1,2,3").chs("2x2").toBytes();
+          }
+        }));
+      }
+      start.countDown();
+
+      for (Future<byte[]> render : renders) {
+        assertArrayEquals(LocalChartServer.PNG, render.get());
+      }
+      callers.shutdown();
+
+      assertEquals(1, server.getRequests());
+      assertEquals(9, coalescing.getCoalescedRequests());
+    } finally {
+      coalescing.close();
+    }
+  }
+
+  @Test
+  @DisplayName("singleFlight - followers give up after their own timeout")
+  void singleFlightFollowerTimeout() throws Exception {
+    final ImageChartsClient coalescing = ImageChartsClient.builder().singleFlight(true).build();
+    server.setDelay(1000);
+    try {
+      CompletableFuture<byte[]> leader = server.chart(coalescing).cht("p").chd("t:1,2,3").chs("2x2").toBytesAsync();
+      final int port = URI.create(server.getOrigin()).getPort();
+
+      long start = System.nanoTime();
+      assertThrows(SocketTimeoutException.class, new Executable() {
+        @Override
+        public void execute() throws Throwable {
+          new ImageCharts("http", "127.0.0.1", port, "/chart", null, 200, coalescing).cht("p").chd("t:1,2,3").chs("2x2").toBytes();
+        }
+      });
+      assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(800));
+
+      assertArrayEquals(LocalChartServer.PNG, leader.get(5, TimeUnit.SECONDS));
+      assertEquals(1, server.getRequests());
+      assertEquals(1, coalescing.getCoalescedRequests());
+    } finally {
+      coalescing.close();
+    }
+  }
+
+  @Test
+  @DisplayName("singleFlight - coalesces asynchronous requests and shares errors")
+  void singleFlightCoalescesAsync() throws IOException, InterruptedException {
+    ImageChartsClient coalescing = ImageChartsClient.builder().singleFlight(true).build();
+    server.setDelay(200);
+    try {
+      List<CompletableFuture<byte[]>> renders = new ArrayList<CompletableFuture<byte[]>>();
+      for (int i = 0; i < 5; i++) {
+        renders.add(server.chart(coalescing).cht("p").chd("t:1,2,3").toBytesAsync());
+      }
+
+      for (CompletableFuture<byte[]> render : renders) {
+        try {
+          render.get();
+          fail("chs is missing");
+        } catch (ExecutionException e) {
+          assertTrue(e.getCause() instanceof ImageChartsException);
+        }
+      }
+      assertEquals(1, server.getRequests());
+      assertEquals(4, coalescing.getCoalescedRequests());
+    } finally {
+      coalescing.close();
+    }
+  }
+
+  @Test
+  @DisplayName("postThreshold - sends oversized charts as a signed form body")
+  void postThresholdSendsForm() throws Exception {
+    ImageChartsClient client = ImageChartsClient.builder().postThreshold(100).build();
+    LocalChartServer server = new LocalChartServer();
+    try {
+      server.chart(client).cht("p").chs("2x2").toBytes();
+      assertEquals("GET", server.getLastMethod());
+
+      double[] values = new double[200];
+      for (int i = 0; i < values.length; i++) values[i] = i * 1.5;
+      ImageCharts chart = server.chart(client, "secret")
+        .cht("lc").chs("2x2").chd(values, ChartDataFormat.AWESOME).icac("account");
+      String url = chart.toURL();
+
+      assertArrayEquals(LocalChartServer.PNG, chart.toBytes());
+      assertEquals("POST", server.getLastMethod());
+      assertEquals(url.substring(url.indexOf('?') + 1), server.getLastQuery());
+
+      chart.toBytesAsync().join();
+      assertEquals("POST", server.getLastMethod());
+    } finally {
+      client.close();
+      server.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - retries transient failures")
+  void retriesTransientFailures() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().maxAttempts(3).initialBackoff(10).build();
+    ImageChartsClient client = ImageChartsClient.builder().retryPolicy(policy).build();
+    try {
+      server.failNext(2, 503);
+      assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chs("2x2").toBytes());
+      assertEquals(3, server.getRequests());
+
+      server.failNext(2, 502);
+      assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chs("2x2").toBytesAsync().join());
+      assertEquals(6, server.getRequests());
+
+      File file = File.createTempFile("chart", ".png");
+      file.deleteOnExit();
+      server.failNext(1, 504);
+      server.chart(client).cht("p").chs("2x2").toFileAsync(file.getAbsolutePath()).join();
+      assertArrayEquals(LocalChartServer.PNG, Files.readAllBytes(file.toPath()));
+      assertEquals(8, server.getRequests());
+
+      server.failNext(3, 503);
+      try {
+        server.chart(client).cht("p").chs("2x2").toBytes();
+        fail("attempts exhausted");
+      } catch (ImageChartsException e) {
+        assertEquals(503, e.getStatusCode());
+      }
+      assertEquals(11, server.getRequests());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - never retries validation errors nor beyond the retry budget")
+  void boundsRetries() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().maxAttempts(3).initialBackoff(1).budgetRatio(0).minRetries(1).build();
+    ImageChartsClient client = ImageChartsClient.builder().retryPolicy(policy).build();
+    try {
+      final ImageCharts invalid = server.chart(client).cht("p");
+      assertThrows(ImageChartsException.class, new Executable() {
+        @Override
+        public void execute() throws Throwable {
+          invalid.toBytes();
+        }
+      });
+      assertEquals(1, server.getRequests());
+
+      server.failNext(10, 503);
+      final ImageCharts chart = server.chart(client).cht("p").chs("2x2");
+      assertThrows(ImageChartsException.class, new Executable() {
+        @Override
+        public void execute() throws Throwable {
+          chart.toBytes();
+        }
+      });
+      assertEquals(3, server.getRequests(), "a single retry was left in the budget");
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - hedges slow requests, first response wins")
+  void hedgesSlowRequests() throws Exception {
+    HedgingPolicy policy = HedgingPolicy.builder().minDelay(10).maxDelay(50).build();
+    ImageChartsClient client = ImageChartsClient.builder().hedgingPolicy(policy).build();
+    try {
+      server.slowNext(1, 5000);
+      long start = System.currentTimeMillis();
+      assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chs("2x2").toBytes());
+      assertTrue(System.currentTimeMillis() - start < 2500);
+      assertEquals(2, server.getRequests());
+
+      start = System.currentTimeMillis();
+      server.slowNext(1, 5000);
+      server.chart(client).cht("p").chs("2x2").toBytesAsync().join();
+      assertTrue(System.currentTimeMillis() - start < 2500);
+      assertEquals(4, server.getRequests());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - hedging stops once its extra load budget is spent")
+  void capsHedges() throws Exception {
+    HedgingPolicy policy = HedgingPolicy.builder().minDelay(10).maxDelay(20).maxExtraLoad(0.01).build();
+    ImageChartsClient client = ImageChartsClient.builder().hedgingPolicy(policy).build();
+    try {
+      server.setDelay(100);
+      for (int i = 0; i < 15; i++) {
+        server.chart(client).cht("p").chs("2x2").toBytes();
+      }
+      assertEquals(25, server.getRequests(), "15 renders plus the 10 hedges of the burst allowance");
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - circuit breaker fails fast while the endpoint is unhealthy")
+  void breaksCircuit() throws Exception {
+    CircuitBreaker breaker = CircuitBreaker.builder().minimumRequests(3).openDuration(60000).build();
+    ImageChartsClient client = ImageChartsClient.builder().circuitBreaker(breaker).build();
+    try {
+      server.failNext(3, 503);
+      for (int i = 0; i < 3; i++) {
+        try {
+          server.chart(client).cht("p").chs("2x2").toBytes();
+          fail("503 expected");
+        } catch (ImageChartsException e) {
+          assertEquals(503, e.getStatusCode());
+        }
+      }
+      assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+      try {
+        server.chart(client).cht("p").chs("2x2").toBytes();
+        fail("circuit open");
+      } catch (ImageChartsException e) {
+        assertEquals("IC_CIRCUIT_OPEN", e.getErrorCode());
+      }
+      try {
+        server.chart(client).cht("p").chs("2x2").toBytesAsync().join();
+        fail("circuit open");
+      } catch (CompletionException e) {
+        assertEquals("IC_CIRCUIT_OPEN", ((ImageChartsException) e.getCause()).getErrorCode());
+      }
+      assertEquals(3, server.getRequests());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - concurrency limit rejects requests beyond it")
+  void limitsConcurrency() throws Exception {
+    ConcurrencyLimit limit = ConcurrencyLimit.builder().initialLimit(2).maxLimit(2).build();
+    ImageChartsClient client = ImageChartsClient.builder().concurrencyLimit(limit).build();
+    try {
+      server.setDelay(300);
+      CompletableFuture<byte[]> first = server.chart(client).cht("p").chs("2x2").toBytesAsync();
+      CompletableFuture<byte[]> second = server.chart(client).cht("p").chs("3x3").toBytesAsync();
+      try {
+        server.chart(client).cht("p").chs("4x4").toBytes();
+        fail("limit reached");
+      } catch (ImageChartsException e) {
+        assertEquals("IC_CONCURRENCY_LIMIT", e.getErrorCode());
+      }
+
+      first.join();
+      second.join();
+      // permits are released by a completion stage that may run just after join() returns
+      long deadline = System.currentTimeMillis() + 1000;
+      while (limit.getInFlight() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+      assertEquals(0, limit.getInFlight());
+      server.chart(client).cht("p").chs("4x4").toBytes();
+      assertEquals(3, server.getRequests());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - concurrency limit holds the permit and times the request until the image is downloaded")
+  void limitsConcurrencyUntilDownloaded() throws Exception {
+    final ConcurrencyLimit limit = ConcurrencyLimit.builder().initialLimit(10).backoffRatio(0.5).maxLatency(100).build();
+    ImageChartsClient client = ImageChartsClient.builder().concurrencyLimit(limit).build();
+    try {
+      final List<Integer> inFlight = new CopyOnWriteArrayList<Integer>();
+      server.chart(client).cht("p").chs("2x2").writeTo(new ByteArrayOutputStream() {
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) {
+          inFlight.add(limit.getInFlight());
+          try {
+            Thread.sleep(150);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          super.write(bytes, offset, length);
+        }
+      });
+
+      assertFalse(inFlight.isEmpty());
+      assertEquals(1, (int) inFlight.get(0));
+      assertEquals(0, limit.getInFlight());
+      // the slow download is an overload sign, although the headers came right away
+      assertEquals(5, limit.getLimit());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - rate limiter spaces requests and pauses on 429")
+  void limitsRate() throws Exception {
+    RateLimiter limiter = RateLimiter.builder().rate(20).burst(1).build();
+    ImageChartsClient client = ImageChartsClient.builder().rateLimiter(limiter).build();
+    try {
+      long start = System.nanoTime();
+      for (int i = 0; i < 3; i++) server.chart(client).cht("p").chs("2x2").toBytes();
+      server.chart(client).cht("p").chs("2x2").toBytesAsync().join();
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(140), "4 requests at 20 per second");
+
+      server.failNext(1, 429);
+      try {
+        server.chart(client).cht("p").chs("2x2").toBytes();
+        fail("429 expected");
+      } catch (ImageChartsException e) {
+        assertEquals(429, e.getStatusCode());
+      }
+      assertEquals(0, limiter.getAvailablePermits(null), 0);
+    } finally {
+      client.close();
+    }
+
+    RateLimiter rejecting = RateLimiter.builder().rate(1).burst(1).mode(RateLimiter.Mode.REJECT).build();
+    client = ImageChartsClient.builder().rateLimiter(rejecting).build();
+    try {
+      server.chart(client).cht("p").chs("2x2").icac("account").toBytes();
+      try {
+        server.chart(client).cht("p").chs("3x3").icac("account").toBytesAsync().join();
+        fail("rate limited");
+      } catch (CompletionException e) {
+        assertEquals("IC_RATE_LIMITED", ((ImageChartsException) e.getCause()).getErrorCode());
+      }
+      server.chart(client).cht("p").chs("2x2").icac("other").toBytes();
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - requests rejected by the circuit breaker give their rate limiter permit back")
+  void refundsRejectedPermits() throws Exception {
+    RateLimiter limiter = RateLimiter.builder().rate(1).burst(2).mode(RateLimiter.Mode.REJECT).build();
+    CircuitBreaker breaker = CircuitBreaker.builder().minimumRequests(1).openDuration(60000).build();
+    ImageChartsClient client = ImageChartsClient.builder().rateLimiter(limiter).circuitBreaker(breaker).build();
+    try {
+      server.failNext(1, 503);
+      for (int i = 0; i < 3; i++) {
+        try {
+          server.chart(client).cht("p").chs("2x2").toBytes();
+          fail("503 then circuit open");
+        } catch (ImageChartsException e) {
+          assertEquals(i == 0 ? 503 : 0, e.getStatusCode());
+        }
+      }
+      try {
+        server.chart(client).cht("p").chs("2x2").toBytesAsync().join();
+        fail("circuit open");
+      } catch (CompletionException e) {
+        assertEquals("IC_CIRCUIT_OPEN", ((ImageChartsException) e.getCause()).getErrorCode());
+      }
+
+      assertEquals(1, server.getRequests());
+      assertEquals(1, limiter.getAvailablePermits(null), 0.1);
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - load balancer spreads requests over endpoints and avoids unhealthy ones")
+  void balancesEndpoints() throws Exception {
+    LocalChartServer other = new LocalChartServer();
+    LoadBalancer balancer = LoadBalancer.builder().endpoint(server.getOrigin()).endpoint(other.getOrigin())
+      .consecutiveFailures(1).ejectionTime(60000).healthCheck("/health", 20).healthyThreshold(1).unhealthyThreshold(1).build();
+    ImageChartsClient client = ImageChartsClient.builder().loadBalancer(balancer).build();
+    try {
+      // the host given to ImageCharts is replaced by the endpoints
+      ImageCharts chart = new ImageCharts("http", "render.invalid", 80, "/chart", null, null, client).cht("p").chs("2x2");
+      for (int i = 0; i < 40; i++) assertArrayEquals(LocalChartServer.PNG, chart.toBytes());
+      assertTrue(server.getRequests() > 0 && other.getRequests() > 0, server.getRequests() + " / " + other.getRequests());
+
+      // passive: a 503 ejects the endpoint
+      server.failNext(1, 503);
+      int failed = 0;
+      for (int i = 0; i < 40; i++) {
+        try {
+          chart.toBytes();
+        } catch (ImageChartsException e) {
+          failed++;
+        }
+      }
+      assertEquals(1, failed);
+      assertFalse(balancer.getEndpoints().get(0).isAvailable());
+
+      // active: a failed health check takes the other endpoint down, leaving no endpoint available
+      other.setHealthy(false);
+      while (balancer.getEndpoints().get(1).isAvailable()) Thread.sleep(10);
+      int before = server.getRequests() + other.getRequests();
+      assertArrayEquals(LocalChartServer.PNG, chart.toBytesAsync().join());
+      assertEquals(before + 1, server.getRequests() + other.getRequests(), "still served when nothing is available");
+      other.setHealthy(true);
+      while (!balancer.getEndpoints().get(1).isAvailable()) Thread.sleep(10);
+    } finally {
+      client.close();
+      other.close();
+    }
+  }
+
+  @Test
+  @DisplayName("client - load balancer shared by several clients keeps its health checks until the last is closed")
+  void sharesLoadBalancer() throws Exception {
+    LoadBalancer balancer = LoadBalancer.builder().endpoint(server.getOrigin())
+      .healthCheck("/health", 20).healthyThreshold(1).unhealthyThreshold(1).build();
+    ImageChartsClient first = ImageChartsClient.builder().loadBalancer(balancer).build();
+    ImageChartsClient second = ImageChartsClient.builder().loadBalancer(balancer).build();
+    try {
+      first.close();
+      first.close();
+      server.setHealthy(false);
+      while (balancer.getEndpoints().get(0).isAvailable()) Thread.sleep(10);
+    } finally {
+      second.close();
+      server.setHealthy(true);
+    }
+
+    // started again by a new client once stopped
+    ImageChartsClient third = ImageChartsClient.builder().loadBalancer(balancer).build();
+    try {
+      while (!balancer.getEndpoints().get(0).isAvailable()) Thread.sleep(10);
+    } finally {
+      third.close();
+    }
+  }
+
+  @Test
+  @DisplayName("http2 - renders through the JDK HTTP client")
+  void http2Transport() throws Exception {
+    final List<String> responses = new CopyOnWriteArrayList<String>();
+    ImageChartsClient client = ImageChartsClient.builder().http2(true).postThreshold(100).metrics(new ChartMetrics() {
+      @Override
+      public void onResponse(int status, long bytes) {
+        responses.add(status + ":" + bytes);
+      }
+    }).build();
+    try {
+      assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chs("2x2").toBytes());
+      assertEquals("GET", server.getLastMethod());
+      assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chs("2x2").toBytesAsync().join());
+      assertEquals(Arrays.asList("200:" + LocalChartServer.PNG.length, "200:" + LocalChartServer.PNG.length), responses);
+
+      File file = File.createTempFile("chart", ".png");
+      file.deleteOnExit();
+      server.chart(client).cht("p").chs("2x2").toFileAsync(file.getPath()).join();
+      assertArrayEquals(LocalChartServer.PNG, Files.readAllBytes(file.toPath()));
+
+      try {
+        server.chart(client).cht("p").toFileAsync(file.getPath()).join();
+        fail("400 expected");
+      } catch (CompletionException e) {
+        assertEquals("IC_MISSING_CHS", ((ImageChartsException) e.getCause()).getErrorCode());
+      }
+      try {
+        server.chart(client).cht("p").toBytes();
+        fail("400 expected");
+      } catch (ImageChartsException e) {
+        assertEquals("IC_MISSING_CHS", e.getErrorCode());
+      }
+
+      double[] values = new double[200];
+      for (int i = 0; i < values.length; i++) values[i] = i * 1.5;
+      ImageCharts chart = server.chart(client, "secret").cht("lc").chs("2x2").chd(values, ChartDataFormat.AWESOME);
+      String url = chart.toURL();
+      assertArrayEquals(LocalChartServer.PNG, chart.toBytes());
+      assertEquals("POST", server.getLastMethod());
+      assertEquals(url.substring(url.indexOf('?') + 1), server.getLastQuery());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("http2 - retries transient failures without the Apache engine")
+  void http2Retries() throws Exception {
+    RetryPolicy policy = RetryPolicy.builder().maxAttempts(3).initialBackoff(10).build();
+    ImageChartsClient client = ImageChartsClient.builder().http2(true).retryPolicy(policy).build();
+    try {
+      server.failNext(2, 503);
+      assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chs("2x2").toBytesAsync().get(5, TimeUnit.SECONDS));
+      assertEquals(3, server.getRequests());
+
+      server.failNext(1, 503);
+      assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chs("2x2").toBytes());
+      assertEquals(5, server.getRequests());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  @DisplayName("http2 - hedges slow requests")
+  void http2Hedges() throws Exception {
+    HedgingPolicy policy = HedgingPolicy.builder().minDelay(10).maxDelay(50).build();
+    ImageChartsClient client = ImageChartsClient.builder().http2(true).hedgingPolicy(policy).build();
+    try {
+      server.slowNext(1, 5000);
+      long start = System.currentTimeMillis();
+      assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chs("2x2").toBytes());
+      assertTrue(System.currentTimeMillis() - start < 2500);
+      assertEquals(2, server.getRequests());
+
+      server.slowNext(1, 5000);
+      start = System.currentTimeMillis();
+      server.chart(client).cht("p").chs("2x2").toBytesAsync().get(5, TimeUnit.SECONDS);
+      assertTrue(System.currentTimeMillis() - start < 2500);
+    } finally {
+      client.close();
+    }
+  }
+}
@@ -4,6 +4,9 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.function.Executable;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -14,6 +17,7 @@ import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -45,7 +49,8 @@ public class ImageChartsTest {
 
     StringBuilder query = new StringBuilder();
     for (Method m : imageCharts.getClass().getMethods()) {
-      if (m.getName().startsWith("c") || m.getName().startsWith("id")) {
+      boolean stringParameter = m.getParameterTypes().length == 1 && m.getParameterTypes()[0] == String.class;
+      if (stringParameter && (m.getName().startsWith("c") || m.getName().startsWith("id"))) {
         m.invoke(imageCharts, "plop");
         query.append("&" + m.getName() + "=plop");
       }
@@ -127,7 +132,9 @@ public class ImageChartsTest {
   void toDataURIWorks() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
     String dataURI = new ImageCharts().cht("p").chd("t:1,2,3").chs("2x2").toDataURI();
 
-    assertEquals("data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAAIAAAACAQAAAABazTCJAAAADElEQVR42mM4wHAAAAMEAYEq5W5a\nAAAAAElFTkSuQmCC", dataURI);
+    assertEquals("data:image/png;base64,iVBORw0KGgo", dataURI.substring(0, 33));
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder().decode(dataURI.substring(22))));
+    assertEquals(2, image.getWidth());
   }
 
   @Test
@@ -135,7 +142,7 @@ public class ImageChartsTest {
   void toDataURISupportGifs() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
     String dataURI = new ImageCharts().cht("p").chd("t:1,2,3").chan("100").chs("2x2").toDataURI();
 
-    assertEquals("data:image/gif;base64,iVBORw0K", dataURI.substring(0, 30));
+    assertEquals("data:image/gif;base64,R0lGOD", dataURI.substring(0, 28));
   }
 
   @Test
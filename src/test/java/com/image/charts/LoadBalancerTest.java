@@ -0,0 +1,69 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadBalancerTest {
+  @Test
+  @DisplayName("load balancer - picks the endpoints with the fewest outstanding requests")
+  void picksLeastOutstanding() {
+    LoadBalancer balancer = LoadBalancer.builder().endpoint("http://a:8080").endpoint("http://b").endpoint("https://c:8443/").build();
+    List<LoadBalancer.Endpoint> endpoints = balancer.getEndpoints();
+
+    for (int i = 0; i < 6; i++) balancer.acquire();
+    for (LoadBalancer.Endpoint endpoint : endpoints) assertEquals(2, endpoint.getOutstanding(), endpoint.getOrigin());
+
+    endpoints.get(1).onSuccess();
+    assertSame(endpoints.get(1), balancer.acquire());
+    assertEquals("https://c:8443/chart?cht=p&chs=2x2", endpoints.get(2).route("http://image-charts.com/chart?cht=p&chs=2x2"));
+
+    LoadBalancer twoChoices = LoadBalancer.builder().endpoint("http://a").endpoint("http://b")
+      .strategy(LoadBalancer.Strategy.POWER_OF_TWO_CHOICES).build();
+    LoadBalancer.Endpoint busy = twoChoices.acquire();
+    for (int i = 0; i < 100; i++) {
+      LoadBalancer.Endpoint picked = twoChoices.acquire();
+      assertNotSame(busy, picked, "the busier endpoint of the two always loses");
+      picked.onIgnored();
+    }
+
+    assertThrows(IllegalArgumentException.class, new Executable() {
+      @Override
+      public void execute() {
+        LoadBalancer.builder().endpoint("http://a/chart");
+      }
+    });
+  }
+
+  @Test
+  @DisplayName("load balancer - ejects failing endpoints for a growing time, within the ejection cap")
+  void ejectsFailingEndpoints() throws InterruptedException {
+    LoadBalancer balancer = LoadBalancer.builder().endpoint("http://a").endpoint("http://b").endpoint("http://c")
+      .consecutiveFailures(2).ejectionTime(50).maxEjectionPercent(34).build();
+    LoadBalancer.Endpoint a = balancer.getEndpoints().get(0);
+    LoadBalancer.Endpoint b = balancer.getEndpoints().get(1);
+
+    a.onFailure();
+    assertTrue(a.isAvailable());
+    a.onFailure();
+    assertFalse(a.isAvailable());
+    for (int i = 0; i < 20; i++) assertNotSame(a, balancer.acquire());
+
+    b.onFailure();
+    b.onFailure();
+    assertTrue(b.isAvailable(), "at most one endpoint of three is ejected");
+
+    Thread.sleep(60);
+    assertTrue(a.isAvailable());
+    a.onFailure();
+    a.onFailure();
+    Thread.sleep(60);
+    assertFalse(a.isAvailable(), "second ejection in a row lasts twice as long");
+    Thread.sleep(50);
+    assertTrue(a.isAvailable());
+  }
+}
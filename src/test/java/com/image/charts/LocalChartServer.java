@@ -0,0 +1,232 @@
+package com.image.charts;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process stand-in for the Image-Charts API, answering every request with a 2x2 PNG
+ * or, when chs is missing, with the same error headers as image-charts.com
+ */
+class LocalChartServer implements AutoCloseable {
+  static final byte[] PNG = png();
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+  private final Map<String, String> responseHeaders = new ConcurrentHashMap<String, String>();
+  private final AtomicInteger notModified = new AtomicInteger();
+  private final AtomicInteger failures = new AtomicInteger();
+  private final AtomicInteger truncations = new AtomicInteger();
+  private volatile int failureStatus = 503;
+  private volatile long delay = 0;
+  private final AtomicInteger slowRequests = new AtomicInteger();
+  private volatile long slowDelay = 0;
+  private volatile String lastMethod;
+  private volatile String lastQuery;
+  private volatile boolean healthy = true;
+
+  LocalChartServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/chart", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        respond(exchange);
+      }
+    });
+    server.createContext("/health", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().close();
+        exchange.sendResponseHeaders(healthy ? 200 : 503, -1);
+        exchange.close();
+      }
+    });
+    server.start();
+  }
+
+  private void respond(HttpExchange exchange) throws IOException {
+    // a request stops being in flight before its response is sent, so that clients never observe it twice
+    int current = inFlight.incrementAndGet();
+    int max = maxInFlight.get();
+    while (current > max && !maxInFlight.compareAndSet(max, current)) max = maxInFlight.get();
+    try {
+      if (delay > 0) Thread.sleep(delay);
+      if (slowRequests.getAndDecrement() > 0) Thread.sleep(slowDelay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      inFlight.decrementAndGet();
+    }
+
+    // the request body is read up front: the JDK server closes the connection after a response without body
+    // whose request was not read to the end, although its headers announced a keep-alive connection
+    String query = exchange.getRequestURI().getRawQuery();
+    String requestBody = new String(readFully(exchange.getRequestBody()), StandardCharsets.UTF_8);
+    lastMethod = exchange.getRequestMethod();
+    if ("POST".equals(lastMethod)) {
+      query = requestBody;
+    }
+    lastQuery = query;
+    if (failures.getAndDecrement() > 0) {
+      exchange.sendResponseHeaders(failureStatus, -1);
+      exchange.close();
+      return;
+    }
+    if (query == null || !query.contains("chs=")) {
+      exchange.getResponseHeaders().add("x-ic-error-code", "IC_MISSING_CHS");
+      exchange.getResponseHeaders().add("x-ic-error-validation", "[{\"message\":\"\\\"chs\\\" is required\"}]");
+      exchange.sendResponseHeaders(400, -1);
+      exchange.close();
+      return;
+    }
+
+    for (Map.Entry<String, String> header : responseHeaders.entrySet()) {
+      exchange.getResponseHeaders().add(header.getKey(), header.getValue());
+    }
+    String etag = responseHeaders.get("ETag");
+    if (etag != null && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      notModified.incrementAndGet();
+      exchange.sendResponseHeaders(304, -1);
+      exchange.close();
+      return;
+    }
+
+    exchange.getResponseHeaders().add("Content-Type", "image/png");
+    exchange.sendResponseHeaders(200, PNG.length);
+    OutputStream body = exchange.getResponseBody();
+    if (truncations.getAndDecrement() > 0) {
+      body.write(PNG, 0, PNG.length / 2);
+      body.flush();
+      // throws as bytes are missing, the server then closes the connection
+      body.close();
+      return;
+    }
+    body.write(PNG);
+    body.close();
+  }
+
+  ImageCharts chart(ImageChartsClient client) {
+    return chart(client, null);
+  }
+
+  ImageCharts chart(ImageChartsClient client, String secret) {
+    return new ImageCharts("http", "127.0.0.1", server.getAddress().getPort(), "/chart", secret, null, client);
+  }
+
+  /**
+   * @return protocol, host and port of the server, as a load balancer endpoint
+   */
+  String getOrigin() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  /**
+   * Answer the /health checks with 200 or 503
+   */
+  void setHealthy(boolean healthy) {
+    this.healthy = healthy;
+  }
+
+  int getRequests() {
+    return requests.get();
+  }
+
+  int getNotModified() {
+    return notModified.get();
+  }
+
+  /**
+   * Send an additional header with every image, an ETag header also enables If-None-Match revalidation
+   */
+  void setResponseHeader(String name, String value) {
+    responseHeaders.put(name, value);
+  }
+
+  /**
+   * @return HTTP method of the last request
+   */
+  String getLastMethod() {
+    return lastMethod;
+  }
+
+  /**
+   * @return query string of the last request, read from the body of POST requests
+   */
+  String getLastQuery() {
+    return lastQuery;
+  }
+
+  int getMaxInFlight() {
+    return maxInFlight.get();
+  }
+
+  void setDelay(long delay) {
+    this.delay = delay;
+  }
+
+  /**
+   * Delay the next requests on top of the regular delay
+   */
+  void slowNext(int count, long delay) {
+    slowDelay = delay;
+    slowRequests.set(count);
+  }
+
+  /**
+   * Answer the next requests with an empty error response
+   */
+  void failNext(int count, int status) {
+    failureStatus = status;
+    failures.set(count);
+  }
+
+  /**
+   * Close the connection halfway through the next images
+   */
+  void truncateNext(int count) {
+    truncations.set(count);
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    int read;
+    while ((read = in.read(chunk)) != -1) out.write(chunk, 0, read);
+    return out.toByteArray();
+  }
+
+  private static byte[] png() {
+    try {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      ImageIO.write(new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB), "png", os);
+      return os.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryChartCacheTest {
+
+  private static CachedChart chart(int size) {
+    return new CachedChart(new byte[size], null, System.currentTimeMillis());
+  }
+
+  /**
+   * Request a chart the way ImageChartsClient does: lookup, then store on miss
+   */
+  private static void request(MemoryChartCache cache, String key) {
+    if (cache.get(key) == null) cache.put(key, chart(100));
+  }
+
+  @Test
+  @DisplayName("get - counts hits and misses")
+  void countsHitsAndMisses() {
+    MemoryChartCache cache = MemoryChartCache.builder().build();
+    request(cache, "a");
+    request(cache, "a");
+    request(cache, "a");
+    request(cache, "b");
+
+    CacheStats stats = cache.stats();
+    assertEquals(2, stats.getHits());
+    assertEquals(2, stats.getMisses());
+    assertEquals(0.5, stats.getHitRatio());
+    assertEquals(2, stats.getEntries());
+  }
+
+  @Test
+  @DisplayName("put - bounds the cache by weight")
+  void boundsWeight() {
+    MemoryChartCache cache = MemoryChartCache.builder().maxBytes(1000).build();
+    for (int i = 0; i < 50; i++) {
+      String key = "chart-" + i;
+      for (int j = 0; j <= i; j++) cache.get(key);
+      cache.put(key, chart(200));
+    }
+
+    assertTrue(cache.stats().getBytes() <= 1000);
+    assertTrue(cache.stats().getEvictions() > 0);
+  }
+
+  @Test
+  @DisplayName("put - one-off charts do not flush the hot set")
+  void keepsHotSet() {
+    MemoryChartCache cache = MemoryChartCache.builder().maxBytes(5 * 110).build();
+    for (int round = 0; round < 10; round++) {
+      for (int hot = 0; hot < 5; hot++) request(cache, "hot-" + hot);
+    }
+
+    for (int cold = 0; cold < 1000; cold++) request(cache, "cold-" + cold);
+
+    for (int hot = 0; hot < 5; hot++) assertNotNull(cache.get("hot-" + hot));
+    assertTrue(cache.getRejections() > 900);
+  }
+
+  @Test
+  @DisplayName("get - expires entries after the ttl")
+  void expiresEntries() {
+    MemoryChartCache cache = MemoryChartCache.builder().ttl(1000).build();
+    cache.put("old", new CachedChart(new byte[10], null, System.currentTimeMillis() - 2000));
+    cache.put("new", chart(10));
+
+    assertNull(cache.get("old"));
+    assertNotNull(cache.get("new"));
+    assertEquals(1, cache.stats().getEvictions());
+  }
+
+  @Test
+  @DisplayName("client - memory cache in front of the API")
+  void clientServesFromMemory() throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+    LocalChartServer server = new LocalChartServer();
+    MemoryChartCache cache = MemoryChartCache.builder().build();
+    ImageChartsClient client = ImageChartsClient.builder().cache(cache).build();
+    try {
+      server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBuffer();
+      server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBuffer();
+      assertArrayEquals(LocalChartServer.PNG, server.chart(client).cht("p").chd("t:1,2,3").chs("2x2").toBytes());
+
+      assertEquals(1, server.getRequests());
+      assertEquals(2.0 / 3, cache.stats().getHitRatio(), 0.001);
+    } finally {
+      client.close();
+      server.close();
+    }
+  }
+}
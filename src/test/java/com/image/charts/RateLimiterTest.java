@@ -0,0 +1,92 @@
+package com.image.charts;
+
+import org.apache.http.client.utils.DateUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+  @Test
+  @DisplayName("rate limiter - spends the burst, then spaces requests at the rate")
+  void spacesRequests() {
+    RateLimiter limiter = RateLimiter.builder().rate(10).burst(2).build();
+
+    assertEquals(0, limiter.reserve(null));
+    assertEquals(0, limiter.reserve(null));
+    long first = limiter.reserve(null);
+    long second = limiter.reserve(null);
+    assertTrue(first > TimeUnit.MILLISECONDS.toNanos(90) && first <= TimeUnit.MILLISECONDS.toNanos(100), String.valueOf(first));
+    assertTrue(second > TimeUnit.MILLISECONDS.toNanos(190) && second <= TimeUnit.MILLISECONDS.toNanos(200), String.valueOf(second));
+  }
+
+  @Test
+  @DisplayName("rate limiter - rejects or queues within a deadline according to the mode")
+  void appliesMode() {
+    final RateLimiter reject = RateLimiter.builder().rate(1).burst(1).mode(RateLimiter.Mode.REJECT).build();
+    assertEquals(0, reject.reserve(null));
+    ImageChartsException error = assertThrows(ImageChartsException.class, new Executable() {
+      @Override
+      public void execute() {
+        reject.reserve(null);
+      }
+    });
+    assertEquals("IC_RATE_LIMITED", error.getErrorCode());
+
+    final RateLimiter queue = RateLimiter.builder().rate(10).burst(1).mode(RateLimiter.Mode.QUEUE).maxWait(150).build();
+    assertEquals(0, queue.reserve(null));
+    assertTrue(queue.reserve(null) > 0);
+    assertThrows(ImageChartsException.class, new Executable() {
+      @Override
+      public void execute() {
+        queue.reserve(null);
+        queue.reserve(null);
+      }
+    });
+  }
+
+  @Test
+  @DisplayName("rate limiter - keeps one bucket per account, paused by 429 responses")
+  void bucketsPerAccount() {
+    RateLimiter limiter = RateLimiter.builder().rate(1).burst(1).account("big", 100, 5).mode(RateLimiter.Mode.REJECT).build();
+
+    assertTrue(limiter.tryAcquire("small"));
+    assertFalse(limiter.tryAcquire("small"));
+    assertTrue(limiter.tryAcquire(null), "requests without account have their own bucket");
+    for (int i = 0; i < 5; i++) assertTrue(limiter.tryAcquire("big"));
+    assertFalse(limiter.tryAcquire("big"));
+
+    RateLimiter paused = RateLimiter.builder().rate(1000).burst(10).build();
+    assertEquals(10, paused.getAvailablePermits("big"), 0.01);
+    paused.onThrottled("big", "2");
+    assertEquals(0, paused.getAvailablePermits("big"), 0);
+    assertTrue(paused.reserve("big") > TimeUnit.MILLISECONDS.toNanos(1900));
+    assertEquals(0, paused.reserve("other"));
+
+    paused.onThrottled("dated", DateUtils.formatDate(new Date(System.currentTimeMillis() + 3000)));
+    long wait = paused.reserve("dated");
+    assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(1500) && wait <= TimeUnit.MILLISECONDS.toNanos(3100), "HTTP-date form: " + wait);
+  }
+
+  @Test
+  @DisplayName("rate limiter - gives back the permits of rejected requests")
+  void refundsPermits() {
+    RateLimiter limiter = RateLimiter.builder().rate(10).burst(1).build();
+
+    assertEquals(0, limiter.reserve(null));
+    limiter.refund(null);
+    assertEquals(0, limiter.reserve(null), "stored permit given back");
+
+    long wait = limiter.reserve(null);
+    limiter.refund(null);
+    assertEquals(wait, limiter.reserve(null), TimeUnit.MILLISECONDS.toNanos(10), "reserved slot given back");
+
+    limiter.onThrottled(null, "1");
+    limiter.refund(null);
+    assertTrue(limiter.reserve(null) > TimeUnit.MILLISECONDS.toNanos(900), "the 429 pause is kept");
+  }
+}
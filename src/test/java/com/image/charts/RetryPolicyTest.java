@@ -0,0 +1,72 @@
+package com.image.charts;
+
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLHandshakeException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RetryPolicyTest {
+  @Test
+  @DisplayName("retry - only transient failures are retryable")
+  void classifiesFailures() {
+    RetryPolicy policy = RetryPolicy.builder().build();
+
+    assertTrue(policy.isRetryable(new SocketException("Connection reset")));
+    assertTrue(policy.isRetryable(new SocketTimeoutException("Read timed out")));
+    assertTrue(policy.isRetryable(new ConnectTimeoutException("Connect timed out")));
+    assertFalse(policy.isRetryable(new InterruptedIOException()));
+    assertFalse(policy.isRetryable(new UnknownHostException("image-charts.com")));
+    assertFalse(policy.isRetryable(new SSLHandshakeException("handshake")));
+
+    assertTrue(policy.isRetryable(503));
+    assertTrue(policy.isRetryable(502));
+    assertFalse(policy.isRetryable(400));
+    assertFalse(policy.isRetryable(500));
+  }
+
+  @Test
+  @DisplayName("retry - backoff is jittered below an exponential bound")
+  void backsOff() {
+    RetryPolicy policy = RetryPolicy.builder().initialBackoff(100).maxBackoff(1000).multiplier(2).build();
+
+    for (int i = 0; i < 100; i++) {
+      assertTrue(policy.backoff(1, null) < 100);
+      assertTrue(policy.backoff(3, null) < 400);
+      assertTrue(policy.backoff(10, null) < 1000);
+    }
+    assertEquals(0, policy.backoff(1, "0"));
+    assertEquals(1000, policy.backoff(1, "1"));
+    assertTrue(policy.backoff(1, "60") < 100, "Retry-After above maxBackoff is ignored");
+    long dated = RetryPolicy.builder().maxBackoff(5000).build().backoff(1, DateUtils.formatDate(new Date(System.currentTimeMillis() + 3000)));
+    assertTrue(dated > 1500 && dated <= 3000, "HTTP-date form: " + dated);
+    assertEquals(0, policy.backoff(1, "Sun, 06 Nov 1994 08:49:37 GMT"));
+  }
+
+  @Test
+  @DisplayName("retry - budget bounds retries to a ratio of requests")
+  void enforcesBudget() {
+    RetryPolicy policy = RetryPolicy.builder().maxAttempts(5).budgetRatio(0.5).minRetries(2).build();
+
+    assertFalse(policy.tryRetry(5));
+    assertTrue(policy.tryRetry(1));
+    assertTrue(policy.tryRetry(2));
+    assertFalse(policy.tryRetry(1), "budget spent");
+
+    policy.onRequest();
+    assertFalse(policy.tryRetry(1));
+    policy.onRequest();
+    assertTrue(policy.tryRetry(1));
+
+    for (int i = 0; i < 100; i++) policy.onRequest();
+    assertEquals(2, policy.getBudget(), 0.001);
+  }
+}
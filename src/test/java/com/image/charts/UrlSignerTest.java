@@ -0,0 +1,65 @@
+package com.image.charts;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UrlSignerTest {
+
+  private static String reference(String secret, String data) throws Exception {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+    return Hex.encode(mac.doFinal(data.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  @DisplayName("sign - computes the HMAC-SHA256 hex signature")
+  void signWorks() throws Exception {
+    assertEquals("71bd93758b49ed28fdabd23a0ff366fe7bf877296ea888b9aaf4ede7978bdc8d", UrlSigner.sign("plop", "cht=p&chd=t%3A1%2C2%2C3&chs=100x100&icac=test_fixture"));
+    assertEquals(reference("plop", "cht=p&chtté=1"), UrlSigner.sign("plop", "cht=p&chtté=1"));
+  }
+
+  @Test
+  @DisplayName("appendSignature - signs a range of the buffer and appends to it")
+  void appendSignatureSignsRange() throws Exception {
+    StringBuilder buffer = new StringBuilder("https://image-charts.com/chart?cht=p&ichm=");
+    UrlSigner.appendSignature(buffer, 31, 36, "secret");
+
+    assertEquals("https://image-charts.com/chart?cht=p&ichm=" + reference("secret", "cht=p"), buffer.toString());
+  }
+
+  @Test
+  @DisplayName("sign - keeps working with more secrets than cached per thread and across threads")
+  void signManySecrets() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+      for (int i = 0; i < 200; i++) {
+        final String secret = "secret" + (i % (UrlSigner.MAX_SECRETS_PER_THREAD * 2));
+        final String data = "cht=p&chd=t%3A" + i;
+        results.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            return reference(secret, data).equals(UrlSigner.sign(secret, data));
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}